@@ -0,0 +1,78 @@
+package etf.nim.jn150081d;
+
+import etf.nim.jn150081d.minimax.AsyncEngine;
+import etf.nim.jn150081d.minimax.Ponderer;
+import etf.nim.jn150081d.minimax.Position;
+import etf.nim.jn150081d.minimax.SearchEngine;
+import etf.nim.jn150081d.minimax.SearchLimits;
+import etf.nim.jn150081d.minimax.SearchResult;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AI is a long-lived CPU player, its engine runs on the shared search executor and keeps
+ * its state between the moves of a game, and it can search on the opponent's time
+ */
+public class AI {
+    private static final long minWaitTime = 500;
+
+    private Ponderer ponderer;
+    private CompletableFuture<SearchResult> search;
+
+    /**
+     * AI constructor
+     *
+     * @param engine search engine selecting the moves
+     */
+    AI(SearchEngine engine) {
+        this.ponderer = new Ponderer(new AsyncEngine(engine));
+    }
+
+    /**
+     * Starts searching the likely replies of the opponent on the move
+     *
+     * @param position snapshot of the game position with the opponent on the move
+     * @param limits configuration of the search of each reply
+     */
+    void ponder(Position position, SearchLimits limits) {
+        ponderer.ponder(position, limits);
+    }
+
+    /**
+     * Starts the search of the next move, reusing the pondering if the opponent played a predicted reply,
+     * the move is not reported sooner than minWaitTime after the start
+     *
+     * @param position snapshot of the game position on the move
+     * @param limits configuration of the search
+     * @return future completed with the selected move
+     */
+    CompletableFuture<SearchResult> selectMove(Position position, SearchLimits limits) {
+        long startTime = System.currentTimeMillis();
+        search = ponderer.search(position, limits);
+        search.whenComplete((result, e) -> {
+            if (e != null && !(e instanceof CancellationException)) {
+                e.printStackTrace();
+            }
+        });
+        return search.thenCompose(result -> {
+            long waitTime = minWaitTime - (System.currentTimeMillis() - startTime);
+            if (waitTime <= 0) {
+                return CompletableFuture.completedFuture(result);
+            }
+            return CompletableFuture.supplyAsync(() -> result,
+                    CompletableFuture.delayedExecutor(waitTime, TimeUnit.MILLISECONDS));
+        });
+    }
+
+    /**
+     * Cancels the running search and the pondering, the move is never reported
+     */
+    void cancel() {
+        ponderer.stop();
+        if (search != null) {
+            search.cancel(true);
+        }
+    }
+}
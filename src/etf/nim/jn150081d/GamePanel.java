@@ -10,37 +10,9 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
-
-/**
- * CPUvCPUThread is used when CPU vs CPU mode is selected, it runs selected AIs nad waits for them to finish the move
- */
-class CPUvCPUThread extends Thread {
-    private GamePanel gamePanel;
-
-    /**
-     * CPUvCPUThread constructor
-     *
-     * @param gamePanel parent gamePanel needed to access needed information
-     */
-    CPUvCPUThread(GamePanel gamePanel) {
-        this.gamePanel = gamePanel;
-    }
-
-    /**
-     * Alternates between AI opponents and waits for their moves until the end of the game or an interrupt
-     */
-    @Override
-    public void run() {
-        while (gamePanel.gameOn) {
-            AI ai = gamePanel.getAI(gamePanel.playerOnMove, false);
-            ai.start();
-            try {
-                ai.join();
-                gamePanel.makeMove(ai.selectedColumn, ai.selectedRow);
-            } catch (InterruptedException e) { ai.interrupt();  }
-        }
-    }
-}
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * GamePanel is an actual drawing panel and a class that encapsulates the game data
@@ -55,6 +27,9 @@ public class GamePanel extends JPanel implements MouseMotionListener, MouseListe
     private static final int ringStartPos = (int) (MainFrame.height * 0.78);
     private static final int ringSpacing = (int) (MainFrame.height * 0.06);
     private static final int ringHeight = (int) (MainFrame.height * 0.12);
+    private static final long cpuMoveTime = 2000;
+    private static final long mctsPlayouts = Long.getLong("nimpro.mcts.playouts", 200000);
+    private static final Map<Integer, ForkJoinPool> searchPools = new ConcurrentHashMap<>();
 
     private MainFrame mainFrame;
 
@@ -69,8 +44,9 @@ public class GamePanel extends JPanel implements MouseMotionListener, MouseListe
     private volatile int highlightedRow = -1;
 
     boolean gameOn = false;
+    volatile int game;
     private GameMode gameMode;
-    private CPUvCPUThread cpuVScpu;
+    private AI [] cpuPlayers = new AI [2];
     int playerOnMove;
     public int prevMove = MainFrame.maxHeaps;
 
@@ -225,27 +201,116 @@ public class GamePanel extends JPanel implements MouseMotionListener, MouseListe
     }
 
     /**
-     * Generates and returns AI player given player on the move
+     * Starts the search of the CPU player on the move, the move is played on the event dispatch thread
+     */
+    private void startCPUMove() {
+        int player = playerOnMove;
+        int game = this.game;
+        Position position = new Position(mainFrame.heapStates, mainFrame.heapsCo(), prevMove);
+        cpuPlayers[player].selectMove(position, cpuLimits(player)).thenAccept(result ->
+                SwingUtilities.invokeLater(() -> playCPUMove(game, result)));
+    }
+
+    /**
+     * Plays the move selected by the CPU player and starts the search of the next one if needed
+     *
+     * @param game id of the game the move was searched for
+     * @param result selected move
+     */
+    private void playCPUMove(int game, SearchResult result) {
+        if (!makeMove(game, result.getColumn(), result.getRow()) || !gameOn) {
+            return;
+        }
+        if (gameMode.getPlayerType(playerOnMove) == GameMode.PlayerType.CPU) {
+            startCPUMove();
+        } else {
+            startPondering();
+        }
+    }
+
+    /**
+     * Lets the CPU player search the likely replies while the human player is on the move
+     */
+    private void startPondering() {
+        int player = (playerOnMove + 1) % 2;
+        if (gameMode.getPlayerType(player) == GameMode.PlayerType.CPU) {
+            Position position = new Position(mainFrame.heapStates, mainFrame.heapsCo(), prevMove);
+            cpuPlayers[player].ponder(position, cpuLimits(player));
+        }
+    }
+
+    /**
+     * Search configuration of the CPU player
+     *
+     * @param player is first or second player
+     * @return search limits given the CPU depth setting
+     */
+    private SearchLimits cpuLimits(int player) {
+        return new SearchLimits(mainFrame.getCPUDepth(player), cpuMoveTime, 0);
+    }
+
+    /**
+     * Generates search engine given CPU level label, positions too large to be packed are searched by LargeBoardAI
      *
-     * @param player is first or second plater on the move
-     * @param callMakeMove should bot call makeMove method or it will be done by caller
-     * @return returns reference to created AI
+     * Every level but random plays Monte Carlo tree search on such positions. The heaps of the GUI
+     * always fit PackedState, so there each level plays its own algorithm. Only the tools can start
+     * from larger positions, and the tournament reports the games that start that way
+     *
+     * @param level string label of the CPU player level
+     * @param threads number of threads searching each position
+     * @return created search engine, or null for unknown label
      */
-    AI getAI(int player, boolean callMakeMove) {
-        String level = mainFrame.getCPULevel(player);
+    static SearchEngine createEngine(String level, int threads) {
+        SearchEngine engine = createPackedEngine(level, threads);
+        if (engine == null || engine instanceof RandomAi) {
+            return engine;
+        }
+        return new ScalableEngine(engine, new LargeBoardAI(searchPool(threads), mctsPlayouts));
+    }
+
+    /**
+     * Creates the engine of the level for positions that fit PackedState
+     *
+     * @param level label of the CPU level
+     * @param threads number of threads searching each position
+     * @return engine of the level, or null for an unknown level
+     */
+    private static SearchEngine createPackedEngine(String level, int threads) {
         if (level.equals(MainFrame.cpuLabels[0])) {
-            return new RandomAi(mainFrame, this, callMakeMove);
+            return new RandomAi();
         } else if (level.equals(MainFrame.cpuLabels[1])) {
-            return new Minimax(mainFrame, this, callMakeMove, prevMove, mainFrame.getCPUDepth(player));
+            return new Minimax(searchPool(threads));
         } else if (level.equals(MainFrame.cpuLabels[2])) {
-            return new AlphaBeta(mainFrame, this, callMakeMove, prevMove, mainFrame.getCPUDepth(player));
+            return new AlphaBeta(searchPool(threads));
         } else if (level.equals(MainFrame.cpuLabels[3])) {
-            return new ProAI(mainFrame, this, callMakeMove, prevMove, mainFrame.getCPUDepth(player));
+            return new MtdfAI(TranspositionTable.getDefault(), threads);
+        } else if (level.equals(MainFrame.cpuLabels[4])) {
+            return new DfpnSolver(new AlphaBeta(searchPool(threads)));
+        } else if (level.equals(MainFrame.cpuLabels[5])) {
+            return new MctsAI(searchPool(threads), mctsPlayouts);
+        } else if (level.equals(MainFrame.cpuLabels[6])) {
+            // answered from the tablebase, threads only search the positions too large for it
+            return new ProAI(Tablebase.getDefault(), TranspositionTable.getDefault());
+        } else if (level.equals(MainFrame.cpuLabels[7])) {
+            return new ProAI(null, TranspositionTable.getDefault(), threads);
         } else {
             return null;
         }
     }
 
+    /**
+     * Pool for the parallel search, parallel and serial search select the same moves
+     *
+     * @param threads number of threads searching each position
+     * @return fork/join pool with the given parallelism, or null to search on the calling thread
+     */
+    private static ForkJoinPool searchPool(int threads) {
+        if (threads == 1) {
+            return null;
+        }
+        return searchPools.computeIfAbsent(threads, ForkJoinPool::new);
+    }
+
     /**
      * Detects mouse click and executes action based on the game state
      *
@@ -265,9 +330,8 @@ public class GamePanel extends JPanel implements MouseMotionListener, MouseListe
                         return;
                     }
 
-                    if (gameMode.getPlayerType(playerOnMove) == GameMode.PlayerType.CPU) {
-                        AI ai = getAI(playerOnMove, true);
-                        ai.start();
+                    if (gameOn && gameMode.getPlayerType(playerOnMove) == GameMode.PlayerType.CPU) {
+                        startCPUMove();
                     }
                 }
             }
@@ -326,20 +390,28 @@ public class GamePanel extends JPanel implements MouseMotionListener, MouseListe
         return true;
     }
 
+    /**
+     * Executes the move searched by an AI, unless the game it was searched for is no longer running
+     *
+     * @param game id of the game the move was searched for
+     * @param column column of the selected chip
+     * @param row row of the selected chip
+     * @return returns whether the move has been executed
+     */
+    boolean makeMove(int game, int column, int row) {
+        if (game != this.game) {
+            return false;
+        }
+        return makeMove(column, row);
+    }
+
     /**
      * Checks if there are any available moves
      *
      * @return whether any valid moves are available
      */
     private boolean checkPossibleMove() {
-        for (int i = 0; i < mainFrame.heapsCo(); i++) {
-            for (int j = 0; j < mainFrame.heapStates[i]; j++) {
-                if (isMoveValid(i, j, mainFrame.heapStates, prevMove)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return MoveGenerator.hasMoves(PackedState.pack(mainFrame.heapStates, mainFrame.heapsCo(), prevMove));
     }
 
     /**
@@ -352,18 +424,7 @@ public class GamePanel extends JPanel implements MouseMotionListener, MouseListe
      * @return whether the desired move is valid
      */
     public boolean isMoveValid(int column, int row, int [] states, int prevMove) {
-        if (column < 0 || row < 0 || states[column] <= row) {
-            return false;
-        }
-        for (int i = 0; i < mainFrame.heapsCo(); i++) {
-            if (i == column) {
-                continue;
-            }
-            if (states[i] == row && row != 0) {
-                return false;
-            }
-        }
-        return states[column] - row <= 2 * prevMove;
+        return MoveGenerator.isMoveValid(states, mainFrame.heapsCo(), prevMove, column, row);
     }
 
     /**
@@ -388,20 +449,22 @@ public class GamePanel extends JPanel implements MouseMotionListener, MouseListe
      */
     void initGame(GameMode gameMode) {
         this.gameMode = gameMode;
+        game++;
         gameOn = true;
         playerOnMove = 0;
         prevMove = MainFrame.maxHeaps;
         setMessageLabel();
 
-        if (gameMode.getPlayerType(0) == GameMode.PlayerType.CPU &&
-                gameMode.getPlayerType(1) == GameMode.PlayerType.CPU) {
-            cpuVScpu = new CPUvCPUThread(this);
-            cpuVScpu.start();
-        } else if (gameMode.getPlayerType(0) == GameMode.PlayerType.CPU) {
-            AI ai = getAI(playerOnMove, true);
-            ai.start();
+        for (int player = 0; player < cpuPlayers.length; player++) {
+            if (gameMode.getPlayerType(player) == GameMode.PlayerType.CPU) {
+                cpuPlayers[player] = new AI(createEngine(mainFrame.getCPULevel(player), mainFrame.getCPUThreads(player)));
+            }
+        }
+        if (gameMode.getPlayerType(0) == GameMode.PlayerType.CPU) {
+            startCPUMove();
+        } else {
+            startPondering();
         }
-
     }
 
     /**
@@ -421,15 +484,13 @@ public class GamePanel extends JPanel implements MouseMotionListener, MouseListe
      */
     void stopGame() {
         gameOn = false;
+        game++;
 
-        if (cpuVScpu != null) {
-            try {
-                cpuVScpu.interrupt();
-                if (Thread.currentThread() != cpuVScpu) {
-                    cpuVScpu.join();
-                }
-            } catch (InterruptedException e) { e.printStackTrace(); }
-            cpuVScpu = null;
+        for (int player = 0; player < cpuPlayers.length; player++) {
+            if (cpuPlayers[player] != null) {
+                cpuPlayers[player].cancel();
+                cpuPlayers[player] = null;
+            }
         }
 
         messageLabel.setForeground(Color.black);
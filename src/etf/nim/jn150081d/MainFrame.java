@@ -57,7 +57,8 @@ public class MainFrame extends JFrame implements ChangeListener {
     private static final String randomSetupText = "RANDOM";
     private static final String startGameText = "START";
     private static final String stopGameText = "STOP";
-    static final String [] cpuLabels = { "random", "minimax", "alpha-beta", "pro" };
+    static final String [] cpuLabels = { "random", "minimax", "alpha-beta", "mtd(f)", "df-pn", "mcts", "pro",
+            "pro smp" };
 
     private JPanel mainPanel = new JPanel(new BorderLayout());
     private JPanel menuPanel = new JPanel();
@@ -76,11 +77,15 @@ public class MainFrame extends JFrame implements ChangeListener {
 
     private JComboBox[] cpuChoice = new JComboBox[2];
     private JSpinner [] cpuDepth = new JSpinner[2];
+    private JSpinner [] cpuThreads = new JSpinner[2];
     {
         cpuChoice[0] = new JComboBox<>(cpuLabels);
         cpuChoice[1] = new JComboBox<>(cpuLabels);
         cpuDepth[0] = new JSpinner(new SpinnerNumberModel(5, 1, 100, 1));
         cpuDepth[1] = new JSpinner(new SpinnerNumberModel(5, 1, 100, 1));
+        int processors = Runtime.getRuntime().availableProcessors();
+        cpuThreads[0] = new JSpinner(new SpinnerNumberModel(processors, 1, 64, 1));
+        cpuThreads[1] = new JSpinner(new SpinnerNumberModel(processors, 1, 64, 1));
     }
 
     private GamePanel gamePanel = new GamePanel(this);
@@ -162,19 +167,23 @@ public class MainFrame extends JFrame implements ChangeListener {
         {
             JPanel panel = new JPanel();
             panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
-            panel.add(new JLabel("  CPU1 level and depth:"));
+            panel.add(new JLabel("  CPU1 level, depth and threads:"));
             {
                 JPanel inPanel = new JPanel();
+                cpuChoice[0].addActionListener(e -> updateCPUSettings());
                 inPanel.add(cpuChoice[0]);
                 inPanel.add(cpuDepth[0]);
+                inPanel.add(cpuThreads[0]);
                 inPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
                 panel.add(inPanel);
             }
-            panel.add(new JLabel("  CPU2 level and depth:"));
+            panel.add(new JLabel("  CPU2 level, depth and threads:"));
             {
                 JPanel inPanel = new JPanel();
+                cpuChoice[1].addActionListener(e -> updateCPUSettings());
                 inPanel.add(cpuChoice[1]);
                 inPanel.add(cpuDepth[1]);
+                inPanel.add(cpuThreads[1]);
                 inPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
                 panel.add(inPanel);
             }
@@ -301,20 +310,27 @@ public class MainFrame extends JFrame implements ChangeListener {
             randomSetup.setEnabled(false);
             cpuChoice[0].setEnabled(false);
             cpuDepth[0].setEnabled(false);
+            cpuThreads[0].setEnabled(false);
             cpuChoice[1].setEnabled(false);
             cpuDepth[1].setEnabled(false);
+            cpuThreads[1].setEnabled(false);
             toggleGame.setText(stopGameText);
         }
     }
 
     /**
-     * JRadioButton clicked callback method, enables and disables parts of the GUI
+     * JRadioButton and CPU level clicked callback method, enables and disables parts of the GUI
      */
     private void updateCPUSettings() {
-        cpuChoice[0].setEnabled(playerModes[2].isSelected() || playerModes[3].isSelected());
-        cpuDepth[0].setEnabled(playerModes[2].isSelected() || playerModes[3].isSelected());
-        cpuChoice[1].setEnabled(playerModes[1].isSelected() || playerModes[3].isSelected());
-        cpuDepth[1].setEnabled(playerModes[1].isSelected() || playerModes[3].isSelected());
+        boolean [] cpu = { playerModes[2].isSelected() || playerModes[3].isSelected(),
+                playerModes[1].isSelected() || playerModes[3].isSelected() };
+        for (int player = 0; player < cpu.length; player++) {
+            // pro answers every position of the GUI from the tablebase, without depth and threads
+            boolean searching = cpu[player] && !getCPULevel(player).equals(cpuLabels[6]);
+            cpuChoice[player].setEnabled(cpu[player]);
+            cpuDepth[player].setEnabled(searching);
+            cpuThreads[player].setEnabled(searching);
+        }
     }
 
     /**
@@ -346,6 +362,16 @@ public class MainFrame extends JFrame implements ChangeListener {
         return (int) cpuDepth[player].getValue();
     }
 
+    /**
+     * Getter for number of threads searching for CPU player on the move
+     *
+     * @param player is first or second player on the move
+     * @return number of search threads
+     */
+    int getCPUThreads(int player) {
+        return (int) cpuThreads[player].getValue();
+    }
+
     /**
      * Getter for constant for maximal number of heaps
      *
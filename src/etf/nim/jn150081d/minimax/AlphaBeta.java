@@ -1,86 +1,181 @@
 package etf.nim.jn150081d.minimax;
 
-import etf.nim.jn150081d.MainFrame;
-import etf.nim.jn150081d.GamePanel;
-
-import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * AlphaBeta optimization of minimax AI algorithm, which allows it to run much faster with the same result
+ *
+ * The serial search tries the moves most likely to cause a cutoff first, see MoveOrdering
+ *
+ * In the selective mode the serial search also reduces and prunes late moves, so it may select a different
+ * move than the full-width search. Moves after the first few are searched one ply shallower, or two plies
+ * for the very late ones, and searched again to the full depth if the reduced search finds they improve
+ * the score. Two plies before the leaves every score short of a proven win is at most the heuristic value
+ * of 0.8, so once a node has it, moves that do not end the game are skipped, and the same holds for the
+ * minimizing player and 0.5. Further from the leaves a skipped move could still lead to a forced win
+ * or loss, so futility pruning is limited to those two plies and never changes the score
  */
 public class AlphaBeta extends Minimax {
+    private static final float maxHeuristic = 0.8f;
+    private static final float minHeuristic = 0.5f;
+    private static final int futilityDepth = 2;
+    private static final int reductionDepth = 3;
+    private static final int fullDepthMoves = 3;
+    private static final int lateMoves = 8;
+
+    private final MoveOrdering ordering = new MoveOrdering();
+    private final boolean selective;
+    private int [][] moveBuffers;
+    private long reductions;
+    private long researches;
+    private long futilityPrunes;
+    private long flushedCutoffs;
+
+    /**
+     * AlphaBeta constructor, search runs on the calling thread
+     */
+    public AlphaBeta() {
+        this(null);
+    }
 
     /**
      * AlphaBeta constructor
      *
-     * @param mainFrame assigned mainFrame
-     * @param gamePanel assigned gamePanel
-     * @param callMakeMove should this AI call makeMove method or not
-     * @param prevMove number of chips removed by previous player
-     * @param depth the maximal depth of the search tree
+     * @param pool pool running the parallel search, or null to search on the calling thread
+     */
+    public AlphaBeta(ForkJoinPool pool) {
+        this(pool, false);
+    }
+
+    /**
+     * AlphaBeta constructor
+     *
+     * @param pool pool running the parallel search, or null to search on the calling thread
+     * @param selective should the serial search reduce and prune late moves
+     */
+    public AlphaBeta(ForkJoinPool pool, boolean selective) {
+        super(pool);
+        this.selective = selective;
+    }
+
+    /**
+     * Move ordering getter, its statistics cover the serial searches of this engine
+     *
+     * @return move ordering of the serial search
      */
-    public AlphaBeta(MainFrame mainFrame, GamePanel gamePanel, boolean callMakeMove, int prevMove, int depth) {
-        super(mainFrame, gamePanel, callMakeMove, prevMove, depth);
+    public MoveOrdering getMoveOrdering() {
+        return ordering;
     }
 
     /**
-     * Calculates a score for each possible move and calls makeMove is needed
+     * Number of moves searched to a reduced depth since the last reset
+     *
+     * @return number of reduced searches
+     */
+    public long getReductions() {
+        return reductions;
+    }
+
+    /**
+     * Number of reduced moves searched again to the full depth since the last reset
+     *
+     * @return number of repeated searches
+     */
+    public long getResearches() {
+        return researches;
+    }
+
+    /**
+     * Number of moves skipped near the leaves since the last reset
+     *
+     * @return number of pruned moves
+     */
+    public long getFutilityPrunes() {
+        return futilityPrunes;
+    }
+
+    /**
+     * Resets the selective search counters
+     */
+    public void resetStatistics() {
+        reductions = 0;
+        researches = 0;
+        futilityPrunes = 0;
+    }
+
+    /**
+     * Prepares the move buffers and the move ordering for the search
+     *
+     * @param limits configuration of the search
      */
     @Override
-    public void run() {
-        moveStart();
-
-        MinimaxNode node = new MinimaxNode(mainFrame.heapStates.clone(), prevMove);
-        ArrayList<Integer> bestMoveColumns = new ArrayList<>();
-        ArrayList<Integer> bestMoveRows = new ArrayList<>();
-        float bestMoveValue = -1;
-
-        // iterate through first possible moves
-        for (int i = 0; i < mainFrame.heapsCo(); i++) {
-            for (int j = 0; j < mainFrame.heapStates[i]; j++) {
-                if (gamePanel.isMoveValid(i, j, node.state, node.prevMove)) {
-                    MinimaxNode newNode = new MinimaxNode(node.state.clone(), node.state[i] - j);
-                    newNode.state[i] = j;
-                    float move = iteration(newNode, depth - 1, 0, 1, false);
-                    if (move > bestMoveValue) {
-                        bestMoveColumns.clear();
-                        bestMoveRows.clear();
-                    }
-                    if (move >= bestMoveValue) {
-                        bestMoveColumns.add(i);
-                        bestMoveRows.add(j);
-                        bestMoveValue = move;
-                    }
-                }
-            }
+    void startSearch(SearchLimits limits) {
+        if (moveBuffers == null || moveBuffers.length < limits.getDepth()) {
+            moveBuffers = new int [limits.getDepth()][MoveGenerator.maxMoves];
         }
+        ordering.newSearch(limits.getDepth());
+        flushedCutoffs = ordering.getCutoffs();
+    }
+
+    /**
+     * Adds the nodes and the cutoffs since the last call to the metrics of the engine class
+     */
+    @Override
+    void flushMetrics() {
+        long cutoffs = ordering.getCutoffs();
+        metrics.addCutoffs(cutoffs - flushedCutoffs);
+        flushedCutoffs = cutoffs;
+        super.flushMetrics();
+    }
 
-        moveEnd();
+    /**
+     * Does this algorithm skip moves that can not change the result
+     *
+     * @return always true
+     */
+    @Override
+    boolean isPruning() {
+        return true;
+    }
 
-        int id = (int) (Math.random() * bestMoveColumns.size());
-        if (callMakeMove) {
-            gamePanel.makeMove(bestMoveColumns.get(id), bestMoveRows.get(id));
-        } else {
-            selectedColumn = bestMoveColumns.get(id);
-            selectedRow = bestMoveRows.get(id);
+    /**
+     * Calculates the score of the state reached by one of the first possible moves
+     *
+     * @param state packed state after the first move
+     * @param depth the maximal depth of the search tree
+     * @param alpha minimal score the move needs to be selected
+     * @return returns the score of the first move
+     */
+    @Override
+    float rootIteration(long state, int depth, float alpha) {
+        if (moveBuffers == null || moveBuffers.length < depth) {
+            // called outside of a search
+            startSearch(new SearchLimits(depth));
         }
+        return iteration(state, depth - 1, 1, alpha, 1, false);
     }
 
     /**
      * Recursively calculates a score for some of the moves until the maximal search depth
      *
      * Some moves can be proved not to be able to produce better results than already achieved,
-     * so they can be skipped and we can still be sure that we will get to the best possible move
+     * so they can be skipped and we can still be sure that we will get to the best possible move,
+     * the earlier a good move is tried the more moves are skipped
      *
-     * @param node state in which next move information is needed
+     * @param state packed state in which next move information is needed
      * @param depth current depth
+     * @param ply distance from the root
      * @param alpha current minimal guaranteed score that can be achieved from the starting state
      * @param beta current maximal possible score that can be achieved from the stating state
      * @param maxPlayer is the player on the move maximizing or minimizing score
      * @return returns the score of starting state
      */
-    private float iteration(MinimaxNode node, int depth, float alpha, float beta, boolean maxPlayer) {
-        if (gamePanel.isGameFinished(node.state, mainFrame.heapsCo())) {
+    private float iteration(long state, int depth, int ply, float alpha, float beta, boolean maxPlayer) {
+        nodes++;
+        if (budget != null) {
+            budget.poll(nodes);
+        }
+        if (PackedState.isFinished(state)) {
             if (maxPlayer) {
                 return 0;
             } else {
@@ -88,14 +183,7 @@ public class AlphaBeta extends Minimax {
             }
         }
 
-        int heuristic = node.state[0];
-        for (int i = 1; i < mainFrame.heapsCo(); i++) {
-            heuristic ^= node.state[i]; // xor
-        }
-        float ret = 0.5f;
-        if (heuristic == 0) {
-            ret = 0.8f;
-        }
+        float ret = PackedState.heuristic(state);
 
         if (depth == 0) {
             // return heuristic value
@@ -107,47 +195,92 @@ public class AlphaBeta extends Minimax {
             }
         }
 
+        int [] moves = moveBuffers[depth];
+        int count = MoveGenerator.generate(state, moves);
+        ordering.order(state, moves, count, ply, -1);
+
         if (maxPlayer) {
             // find best next move
             float bestValue = 0;
-            boolean terminated = false;
-            for (int i = 0; i < mainFrame.heapsCo() && !terminated; i++) {
-                for (int j = 0; j < node.state[i] && !terminated; j++) {
-                    if (gamePanel.isMoveValid(i, j, node.state, node.prevMove)) {
-                        MinimaxNode newNode = new MinimaxNode(node.state.clone(), node.state[i] - j);
-                        newNode.state[i] = j;
-                        float value = iteration(newNode, depth - 1, alpha, beta, false);
-                        if (value == -1) {
-                            value = ret;
-                        }
-                        bestValue = Math.max(bestValue, value);
-                        alpha = Math.max(alpha, bestValue);
-                        if (beta <= alpha) {
-                            terminated = true;
-                        }
-                    }
+            for (int k = 0; k < count; k++) {
+                long child = PackedState.play(state, MoveGenerator.column(moves[k]), MoveGenerator.row(moves[k]));
+                float value;
+                if (!selective || k == 0 || !MoveGenerator.hasMoves(child)) {
+                    value = iteration(child, depth - 1, ply + 1, alpha, beta, false);
+                } else if (depth <= futilityDepth && alpha >= maxHeuristic) {
+                    // only a move ending the game could raise the score
+                    futilityPrunes++;
+                    bestValue = Math.max(bestValue, maxHeuristic);
+                    continue;
+                } else {
+                    value = selectiveIteration(child, depth, ply, k, alpha, beta, false, ret);
+                }
+                if (value == -1) {
+                    value = ret;
+                }
+                bestValue = Math.max(bestValue, value);
+                alpha = Math.max(alpha, bestValue);
+                if (beta <= alpha) {
+                    ordering.cutoff(state, moves[k], ply, depth, k == 0);
+                    break;
                 }
             }
             return bestValue;
         } else {
             // find worst next move
             float bestValue = 1;
-            boolean terminated = false;
-            for (int i = 0; i < mainFrame.heapsCo() && !terminated; i++) {
-                for (int j = 0; j < node.state[i] && !terminated; j++) {
-                    if (gamePanel.isMoveValid(i, j, node.state, node.prevMove)) {
-                        MinimaxNode newNode = new MinimaxNode(node.state.clone(), node.state[i] - j);
-                        newNode.state[i] = j;
-                        float value = iteration(newNode, depth - 1, alpha, beta, true);
-                        bestValue = Math.min(bestValue, value);
-                        beta = Math.min(beta, bestValue);
-                        if (beta <= alpha) {
-                            terminated = true;
-                        }
-                    }
+            for (int k = 0; k < count; k++) {
+                long child = PackedState.play(state, MoveGenerator.column(moves[k]), MoveGenerator.row(moves[k]));
+                float value;
+                if (!selective || k == 0 || !MoveGenerator.hasMoves(child)) {
+                    value = iteration(child, depth - 1, ply + 1, alpha, beta, true);
+                } else if (depth <= futilityDepth && beta <= minHeuristic) {
+                    // only a move ending the game could lower the score
+                    futilityPrunes++;
+                    bestValue = Math.min(bestValue, minHeuristic);
+                    continue;
+                } else {
+                    value = selectiveIteration(child, depth, ply, k, alpha, beta, true, ret);
+                }
+                bestValue = Math.min(bestValue, value);
+                beta = Math.min(beta, bestValue);
+                if (beta <= alpha) {
+                    ordering.cutoff(state, moves[k], ply, depth, k == 0);
+                    break;
                 }
             }
             return bestValue;
         }
     }
+
+    /**
+     * Searches a move after the first one, late moves are first searched to a reduced depth
+     * and searched again to the full depth only if they improve the score of the node
+     *
+     * @param child packed state after the move
+     * @param depth depth of the node the move is played in
+     * @param ply distance of the node from the root
+     * @param index index of the move in the searched order
+     * @param alpha current minimal guaranteed score of the node
+     * @param beta current maximal possible score of the node
+     * @param maxPlayer is the player on the move in the child maximizing score
+     * @param ret heuristic value of the node, used for the flag returned by the leaves
+     * @return score of the child
+     */
+    private float selectiveIteration(long child, int depth, int ply, int index, float alpha, float beta,
+                                     boolean maxPlayer, float ret) {
+        if (depth < reductionDepth || index < fullDepthMoves) {
+            return iteration(child, depth - 1, ply + 1, alpha, beta, maxPlayer);
+        }
+        reductions++;
+        int reduction = index >= lateMoves ? 2 : 1;
+        float value = iteration(child, depth - 1 - reduction, ply + 1, alpha, beta, maxPlayer);
+        float score = value == -1 ? ret : value;
+        if (maxPlayer ? score >= beta : score <= alpha) {
+            // the move is no better than the ones already searched
+            return value;
+        }
+        researches++;
+        return iteration(child, depth - 1, ply + 1, alpha, beta, maxPlayer);
+    }
 }
@@ -0,0 +1,165 @@
+package etf.nim.jn150081d.minimax;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * AsyncEngine is a long-lived search engine that receives search requests on a bounded executor
+ *
+ * The wrapped engine is reused for every request, so its state, such as the transposition table,
+ * survives between the moves. Requests of one engine are queued and searched one at a time, a request
+ * is handed to the executor only when the previous one is finished, so waiting requests do not hold
+ * executor threads. Cancelling the returned future interrupts the search, which releases the executor
+ * thread within milliseconds, or drops the request if it is still waiting
+ */
+public final class AsyncEngine {
+    private static final int defaultThreads = 4;
+
+    private static volatile ExecutorService defaultExecutor;
+
+    private final SearchEngine engine;
+    private final ExecutorService executor;
+    private CompletableFuture<Void> last = CompletableFuture.completedFuture(null);
+
+    /**
+     * One search of the engine, queued behind the earlier ones
+     */
+    private final class Request implements Runnable {
+        final CompletableFuture<SearchResult> result = new CompletableFuture<>();
+        final CompletableFuture<Void> finished = new CompletableFuture<>();
+        private final Position position;
+        private final SearchLimits limits;
+        private Thread runner;
+
+        /**
+         * Request constructor
+         *
+         * @param position position to be searched
+         * @param limits configuration of the search
+         */
+        Request(Position position, SearchLimits limits) {
+            this.position = position;
+            this.limits = limits;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (result.isDone()) {
+                    // cancelled while waiting for the earlier requests
+                    finished.complete(null);
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+            try {
+                result.complete(engine.search(position, limits));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                    // a late cancel must not interrupt the next task of the executor thread
+                    Thread.interrupted();
+                }
+                finished.complete(null);
+            }
+        }
+
+        /**
+         * Interrupts the search if it is running
+         */
+        synchronized void interrupt() {
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+    }
+
+    /**
+     * AsyncEngine constructor, searches run on the shared default executor
+     *
+     * @param engine search engine selecting the moves
+     */
+    public AsyncEngine(SearchEngine engine) {
+        this(engine, getDefaultExecutor());
+    }
+
+    /**
+     * AsyncEngine constructor
+     *
+     * @param engine search engine selecting the moves
+     * @param executor executor running the searches
+     */
+    public AsyncEngine(SearchEngine engine, ExecutorService executor) {
+        this.engine = engine;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the executor shared by all engines that are not given their own,
+     * a fixed number of daemon threads that only wait for the searches of the engines
+     *
+     * @return shared executor
+     */
+    public static ExecutorService getDefaultExecutor() {
+        ExecutorService executor = defaultExecutor;
+        if (executor == null) {
+            synchronized (AsyncEngine.class) {
+                executor = defaultExecutor;
+                if (executor == null) {
+                    executor = Executors.newFixedThreadPool(defaultThreads, runnable -> {
+                        Thread thread = new Thread(runnable, "Search engine");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    defaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Starts the search of the position once the earlier requests of this engine are finished
+     *
+     * @param position position to be searched, must have at least one valid move
+     * @param limits configuration of the search
+     * @return future completed with the selected move, cancelling it cancels the search
+     */
+    public CompletableFuture<SearchResult> search(Position position, SearchLimits limits) {
+        Request request = new Request(position, limits);
+        CompletableFuture<Void> previous;
+        synchronized (this) {
+            previous = last;
+            last = request.finished;
+        }
+        // the request is handed to the executor only after the previous one left the engine,
+        // so no executor thread waits for the engine
+        previous.whenComplete((ignored, e) -> {
+            try {
+                executor.execute(request);
+            } catch (RejectedExecutionException rejected) {
+                request.result.completeExceptionally(rejected);
+                request.finished.complete(null);
+            }
+        });
+        request.result.whenComplete((move, e) -> {
+            if (request.result.isCancelled()) {
+                request.interrupt();
+            }
+        });
+        return request.result;
+    }
+
+    /**
+     * Engine getter
+     *
+     * @return wrapped search engine
+     */
+    public SearchEngine getEngine() {
+        return engine;
+    }
+}
@@ -0,0 +1,316 @@
+package etf.nim.jn150081d.minimax;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * DfpnSolver proves positions won or lost with depth-first proof-number search
+ *
+ * The proof number of a state is an estimate of the number of states that have to be expanded to prove
+ * that the player on the move wins, the disproof number the same for a loss. The player on the move wins
+ * if some move leads to a state lost for the opponent, so the proof number of a state is the minimum of
+ * disproof numbers of its children and the disproof number is the sum of their proof numbers. The search
+ * always expands the most proving child and only returns to the parent once the numbers of the child
+ * exceed thresholds derived from the siblings, so no tree is kept in memory
+ *
+ * Proof and disproof numbers are kept in a fixed size table, replacing the entries with the least work
+ * behind them, and forgotten states are simply expanded again. The game has no cycles, since every move
+ * removes a chip, and entries of proven states stay valid between searches
+ *
+ * Positions that are not solved within the budget are searched by the fallback engine
+ */
+public class DfpnSolver implements SearchEngine {
+
+    private static final long defaultBytes = 16L << 20;
+    private static final int slotBytes = 24;
+    private static final int ways = 4;
+    private static final int infinity = Integer.MAX_VALUE;
+    private static final int maxPly = PackedState.maxHeaps * PackedState.maxHeight;
+
+    private final SearchEngine fallback;
+    private final long [] keys;
+    private final int [] proofs;
+    private final int [] disproofs;
+    private final int [] bestMoves;
+    private final int [] work;
+    private final int slotMask;
+    private final int [][] moveBuffers = new int [maxPly + 1][];
+    private final long [][] childBuffers = new long [maxPly + 1][];
+
+    private long nodes;
+    private SearchBudget budget;
+
+    /**
+     * DfpnSolver constructor with a table of default size
+     *
+     * @param fallback engine searching the positions that are not solved within the budget
+     */
+    public DfpnSolver(SearchEngine fallback) {
+        this(fallback, defaultBytes);
+    }
+
+    /**
+     * DfpnSolver constructor
+     *
+     * @param fallback engine searching the positions that are not solved within the budget
+     * @param bytes memory budget of the table, rounded down to a power of two number of slots
+     */
+    public DfpnSolver(SearchEngine fallback, long bytes) {
+        int count = (int) Math.min(Long.highestOneBit(Math.max(bytes / slotBytes, ways)), 1 << 26);
+        this.fallback = fallback;
+        keys = new long [count];
+        proofs = new int [count];
+        disproofs = new int [count];
+        bestMoves = new int [count];
+        work = new int [count];
+        slotMask = count - 1;
+    }
+
+    /**
+     * Proves the position won or lost and selects a winning move, or a move of a lost position
+     * the opponent needed the most work to prove. With a time or node budget the solver gets half
+     * of it, and the fallback engine searches the rest if the position is not solved by then
+     *
+     * @param position position to be searched, must have at least one valid move
+     * @param limits configuration of the search
+     * @return selected move, with score 1 for a won and 0 for a lost position if it is solved
+     */
+    @Override
+    public SearchResult search(Position position, SearchLimits limits) {
+        long state = position.pack();
+        if (!MoveGenerator.hasMoves(state)) {
+            throw new IllegalArgumentException("No valid moves in position " + position);
+        }
+        nodes = 0;
+
+        long startTime = System.currentTimeMillis();
+        SearchBudget limit = new SearchBudget(solverLimits(limits));
+        limit.enforce();
+        budget = limit;
+        try {
+            mid(state, 0, infinity, infinity);
+        } catch (SearchAborted e) {
+            if (limit.isCancelled()) {
+                throw new CancellationException("Search cancelled");
+            }
+            SearchResult result = fallback.search(position, fallbackLimits(limits, startTime, nodes));
+            return new SearchResult(result.getColumn(), result.getRow(), result.getScore(), nodes + result.getNodes());
+        } finally {
+            budget = null;
+        }
+
+        int slot = find(TranspositionTable.key(state));
+        if (proofs[slot] == 0) {
+            int move = bestMoves[slot];
+            return new SearchResult(PackedState.column(state, ProAI.moveHeight(move)), ProAI.moveRow(move), 1, nodes);
+        }
+        int move = hardestMove(state);
+        return new SearchResult(MoveGenerator.column(move), MoveGenerator.row(move), 0, nodes);
+    }
+
+    /**
+     * Expands the state until it is solved or its proof or disproof number reaches the threshold
+     *
+     * @param state packed state, must have at least one valid move
+     * @param ply distance from the root
+     * @param proofThreshold proof number at which the search returns to the parent
+     * @param disproofThreshold disproof number at which the search returns to the parent
+     */
+    private void mid(long state, int ply, int proofThreshold, int disproofThreshold) {
+        nodes++;
+        budget.poll(nodes);
+        long startNodes = nodes;
+
+        if (moveBuffers[ply] == null) {
+            moveBuffers[ply] = new int [MoveGenerator.maxMoves];
+            childBuffers[ply] = new long [MoveGenerator.maxMoves];
+        }
+        int [] moves = moveBuffers[ply];
+        long [] children = childBuffers[ply];
+        int count = MoveGenerator.generate(state, moves);
+        for (int k = 0; k < count; k++) {
+            children[k] = PackedState.play(state, MoveGenerator.column(moves[k]), MoveGenerator.row(moves[k]));
+        }
+
+        int proof;
+        int disproof;
+        int best;
+        while (true) {
+            // proof number is the smallest disproof number of the children, disproof number the sum of proof numbers
+            proof = infinity;
+            long disproofSum = 0;
+            best = 0;
+            int secondDisproof = infinity;
+            for (int k = 0; k < count; k++) {
+                long child = children[k];
+                int slot = find(TranspositionTable.key(child));
+                int childProof;
+                int childDisproof;
+                if (slot != -1) {
+                    childProof = proofs[slot];
+                    childDisproof = disproofs[slot];
+                } else if (!MoveGenerator.hasMoves(child)) {
+                    // opponent has no moves and loses
+                    childProof = infinity;
+                    childDisproof = 0;
+                } else {
+                    childProof = initialProof(child);
+                    childDisproof = initialDisproof(child);
+                }
+
+                if (childDisproof < proof) {
+                    secondDisproof = proof;
+                    proof = childDisproof;
+                    best = k;
+                } else if (childDisproof < secondDisproof) {
+                    secondDisproof = childDisproof;
+                }
+                if (childProof == infinity) {
+                    // the move wins, other children do not matter
+                    break;
+                }
+                disproofSum += childProof;
+            }
+            disproof = proof == 0 ? infinity : (int) Math.min(disproofSum, infinity - 1);
+
+            if (proof >= proofThreshold || disproof >= disproofThreshold) {
+                break;
+            }
+
+            int slot = find(TranspositionTable.key(children[best]));
+            int bestProof = slot != -1 ? proofs[slot] : initialProof(children[best]);
+            int childProofThreshold = (int) Math.min(infinity - 1L, (long) disproofThreshold - disproof + bestProof);
+            // threshold a quarter above the second best child, so the search does not switch back and forth between them
+            int childDisproofThreshold = (int) Math.min(proofThreshold, (long) secondDisproof + (secondDisproof >> 2) + 1);
+            mid(children[best], ply + 1, childProofThreshold, childDisproofThreshold);
+        }
+
+        int move = proof == 0 ? ProAI.tableMove(PackedState.height(state, MoveGenerator.column(moves[best])),
+                MoveGenerator.row(moves[best])) : TranspositionTable.noMove;
+        store(TranspositionTable.key(state), proof, disproof, move, nodes - startNodes + 1);
+    }
+
+    /**
+     * Selects the move of a lost position with the most work recorded behind the opponent's proof,
+     * so the opponent has to find the longest win
+     *
+     * @param state packed state, must have at least one valid move
+     * @return encoded move as returned by MoveGenerator
+     */
+    private int hardestMove(long state) {
+        int [] moves = new int [MoveGenerator.maxMoves];
+        int count = MoveGenerator.generate(state, moves);
+        int best = 0;
+        int bestWork = -1;
+        for (int k = 0; k < count; k++) {
+            long child = PackedState.play(state, MoveGenerator.column(moves[k]), MoveGenerator.row(moves[k]));
+            int slot = find(TranspositionTable.key(child));
+            int childWork = slot != -1 ? work[slot] : 0;
+            if (childWork > bestWork) {
+                best = k;
+                bestWork = childWork;
+            }
+        }
+        return moves[best];
+    }
+
+    /**
+     * Initial proof number of an unexpanded state, positions with non-zero nim-sum are usually won
+     *
+     * @param state packed state
+     * @return proof number estimate
+     */
+    private static int initialProof(long state) {
+        return PackedState.nimSum(state) != 0 ? 1 : 2;
+    }
+
+    /**
+     * Initial disproof number of an unexpanded state, positions with zero nim-sum are usually lost
+     *
+     * @param state packed state
+     * @return disproof number estimate
+     */
+    private static int initialDisproof(long state) {
+        return PackedState.nimSum(state) == 0 ? 1 : 2;
+    }
+
+    /**
+     * Finds the slot of the state
+     *
+     * @param key key of the state
+     * @return slot index, or -1 if the state is not in the table
+     */
+    private int find(long key) {
+        int slot = (int) (key >>> 32) & slotMask & -ways;
+        for (int i = slot; i < slot + ways; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Stores the numbers of the state, replacing the entry of the bucket with the least work behind it
+     *
+     * @param key key of the state
+     * @param proof proof number
+     * @param disproof disproof number
+     * @param move winning move encoded for the transposition table, or noMove
+     * @param nodes number of states expanded by this search of the state
+     */
+    private void store(long key, int proof, int disproof, int move, long nodes) {
+        int victim = find(key);
+        if (victim == -1) {
+            int slot = (int) (key >>> 32) & slotMask & -ways;
+            victim = slot;
+            for (int i = slot; i < slot + ways; i++) {
+                if (keys[i] == 0) {
+                    victim = i;
+                    break;
+                }
+                if (work[i] < work[victim]) {
+                    victim = i;
+                }
+            }
+        }
+        long total = keys[victim] == key ? work[victim] + nodes : nodes;
+        keys[victim] = key;
+        proofs[victim] = proof;
+        disproofs[victim] = disproof;
+        bestMoves[victim] = move;
+        work[victim] = (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Limits of the solver, half of the time and node budget if there is one
+     *
+     * @param limits configuration of the search
+     * @return limits of the proof-number search
+     */
+    private static SearchLimits solverLimits(SearchLimits limits) {
+        if (!limits.isDeepening()) {
+            return limits;
+        }
+        long time = limits.getTime() > 0 ? Math.max(1, limits.getTime() / 2) : 0;
+        long nodes = limits.getNodes() > 0 ? Math.max(1, limits.getNodes() / 2) : 0;
+        return new SearchLimits(limits.getDepth(), time, nodes);
+    }
+
+    /**
+     * Limits of the fallback search, the rest of the time and node budget if there is one
+     *
+     * @param limits configuration of the search
+     * @param startTime time at which the solver started, in milliseconds
+     * @param solverNodes number of states expanded by the solver
+     * @return limits of the fallback search
+     */
+    private static SearchLimits fallbackLimits(SearchLimits limits, long startTime, long solverNodes) {
+        if (!limits.isDeepening()) {
+            return limits;
+        }
+        long time = limits.getTime() > 0 ?
+                Math.max(1, limits.getTime() - (System.currentTimeMillis() - startTime)) : 0;
+        long nodes = limits.getNodes() > 0 ? Math.max(1, limits.getNodes() - solverNodes) : 0;
+        return new SearchLimits(limits.getDepth(), time, nodes);
+    }
+}
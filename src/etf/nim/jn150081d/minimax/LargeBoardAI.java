@@ -0,0 +1,78 @@
+package etf.nim.jn150081d.minimax;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * LargeBoardAI is the Monte Carlo tree search of MctsAI for positions that do not fit PackedState
+ *
+ * The tree holds LargeState nodes and each random playout runs on one copy of the occupied heights
+ * bitset, every move of the playout scanning the bitset, so a playout costs the number of moves played
+ * times the number of heaps. A large position can have thousands of valid moves, expanding a node
+ * lists all of them, but only the selected ones get a child
+ */
+public class LargeBoardAI extends MonteCarloSearch<LargeState> {
+
+    private static final int pollMask = 1023;
+
+    /**
+     * LargeBoardAI constructor
+     *
+     * @param pool pool running the playouts, or null to run them on the calling thread
+     * @param playouts number of playouts per move unless the limits have a node budget
+     */
+    public LargeBoardAI(ForkJoinPool pool, long playouts) {
+        super(pool, playouts);
+    }
+
+    @Override
+    LargeState rootState(Position position) {
+        LargeState state = LargeState.of(position);
+        if (state.countMoves() == 0) {
+            throw new IllegalArgumentException("No valid moves in position " + position);
+        }
+        return state;
+    }
+
+    @Override
+    int [] newBuffer() {
+        // moves are counted and picked in the bitset, there is no list to fill
+        return null;
+    }
+
+    @Override
+    int [] moves(LargeState state, int [] buffer) {
+        return state.countMoves() == 0 ? null : state.moves();
+    }
+
+    @Override
+    LargeState play(LargeState state, int move) {
+        return state.play(move);
+    }
+
+    @Override
+    boolean randomGame(LargeState state, int [] buffer, ThreadLocalRandom random, SearchBudget budget) {
+        long [] heights = state.copyHeights();
+        int prevMove = state.getPrevMove();
+        boolean onMove = true;
+        int count;
+        int moves = 0;
+        while ((count = LargeState.countMoves(heights, prevMove)) > 0) {
+            if ((++moves & pollMask) == 0) {
+                // a game on a large board can take millions of moves
+                budget.checkTime();
+            }
+            int move = LargeState.moveAt(heights, prevMove, random.nextInt(count));
+            LargeState.apply(heights, move);
+            prevMove = LargeState.from(move) - LargeState.to(move);
+            onMove = !onMove;
+        }
+        // the player without a valid move loses
+        return !onMove;
+    }
+
+    @Override
+    SearchResult result(Position position, int move, float score, long nodes) {
+        return new SearchResult(position.column(LargeState.from(move)), LargeState.to(move), score, nodes);
+    }
+}
@@ -0,0 +1,325 @@
+package etf.nim.jn150081d.minimax;
+
+import java.util.Arrays;
+
+/**
+ * LargeState represents positions that do not fit PackedState, with any number of heaps and heights
+ * up to maxHeight
+ *
+ * Non-zero heights are distinct and heap order does not matter for the game, so a position is the set of
+ * occupied heights, stored as a bitset with bit h set when some heap has height h, and the previous move.
+ * The size of the state grows with the largest height only, not with the number of heaps
+ *
+ * Moves are encoded as (from << 16) | to, reducing the heap of height from to height to.
+ * Static methods work on a mutable copy of the bitset, so a random playout allocates only that copy,
+ * but each of its moves is counted and picked in a scan of all the occupied heights. Listing the moves
+ * and playing one allocate a new array, so expanding a node costs the number of its valid moves
+ */
+public final class LargeState {
+    public static final int maxHeight = 0xFFFF;
+
+    private static final int toBits = 16;
+    private static final int toMask = (1 << toBits) - 1;
+
+    private final long [] heights;
+    private final int prevMove;
+
+    /**
+     * LargeState constructor
+     *
+     * @param heights bitset of occupied heights, not copied unless it ends with empty words
+     * @param prevMove number of chips removed by previous player
+     */
+    private LargeState(long [] heights, int prevMove) {
+        int length = heights.length;
+        while (length > 0 && heights[length - 1] == 0) {
+            length--;
+        }
+        // equal positions have equal bitsets
+        this.heights = length == heights.length ? heights : Arrays.copyOf(heights, length);
+        this.prevMove = prevMove;
+    }
+
+    /**
+     * Converts the position, heap order is dropped
+     *
+     * @param position position with heights up to maxHeight
+     * @return state of the position
+     */
+    public static LargeState of(Position position) {
+        int highest = 0;
+        for (int i = 0; i < position.getNumHeaps(); i++) {
+            highest = Math.max(highest, position.getHeight(i));
+        }
+        long [] heights = new long [(highest >>> 6) + 1];
+        for (int i = 0; i < position.getNumHeaps(); i++) {
+            int height = position.getHeight(i);
+            if (height != 0) {
+                heights[height >>> 6] |= 1L << height;
+            }
+        }
+        return new LargeState(heights, position.getPrevMove());
+    }
+
+    /**
+     * Previous move getter
+     *
+     * @return number of chips removed by previous player
+     */
+    public int getPrevMove() {
+        return prevMove;
+    }
+
+    /**
+     * Checks if some heap has the given height
+     *
+     * @param height non-zero number of chips
+     * @return whether the height is occupied
+     */
+    public boolean has(int height) {
+        return has(heights, height);
+    }
+
+    /**
+     * Checks if there are no more chips on the heaps
+     *
+     * @return whether game is finished
+     */
+    public boolean isFinished() {
+        for (long word : heights) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Number of valid moves
+     *
+     * @return number of valid moves
+     */
+    public int countMoves() {
+        return countMoves(heights, prevMove);
+    }
+
+    /**
+     * Lists the valid moves, ordered by the heap height and then by the target height
+     *
+     * @return encoded moves
+     */
+    public int [] moves() {
+        int [] moves = new int [countMoves()];
+        int count = 0;
+        for (int from = nextHeight(heights, 1); from != -1; from = nextHeight(heights, from + 1)) {
+            for (int to = lowestTarget(from, prevMove); to < from; to++) {
+                if (to == 0 || !has(heights, to)) {
+                    moves[count++] = move(from, to);
+                }
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Generates the state after the move
+     *
+     * @param move valid encoded move
+     * @return new state
+     */
+    public LargeState play(int move) {
+        long [] next = heights.clone();
+        apply(next, move);
+        return new LargeState(next, from(move) - to(move));
+    }
+
+    /**
+     * Copy of the occupied heights bitset, for playouts that modify it in place
+     *
+     * @return bitset with bit h set when some heap has height h
+     */
+    long [] copyHeights() {
+        return heights.clone();
+    }
+
+    /**
+     * Encodes a move
+     *
+     * @param from height of the selected heap
+     * @param to height of the heap after the move
+     * @return encoded move
+     */
+    public static int move(int from, int to) {
+        return (from << toBits) | to;
+    }
+
+    /**
+     * Height of the selected heap of the move
+     *
+     * @param move encoded move
+     * @return height before the move
+     */
+    public static int from(int move) {
+        return move >>> toBits;
+    }
+
+    /**
+     * Height of the selected heap after the move
+     *
+     * @param move encoded move
+     * @return height after the move
+     */
+    public static int to(int move) {
+        return move & toMask;
+    }
+
+    /**
+     * Number of valid moves of the bitset, heights whose targets are all occupied contribute none
+     *
+     * @param heights bitset of occupied heights
+     * @param prevMove number of chips removed by previous player
+     * @return number of valid moves
+     */
+    static int countMoves(long [] heights, int prevMove) {
+        int count = 0;
+        for (int from = nextHeight(heights, 1); from != -1; from = nextHeight(heights, from + 1)) {
+            int lowest = lowestTarget(from, prevMove);
+            count += from - lowest - occupied(heights, Math.max(1, lowest), from - 1);
+        }
+        return count;
+    }
+
+    /**
+     * Finds the valid move at the index of the order used by moves()
+     *
+     * @param heights bitset of occupied heights
+     * @param prevMove number of chips removed by previous player
+     * @param index index of the move, below the number of valid moves
+     * @return encoded move
+     */
+    static int moveAt(long [] heights, int prevMove, int index) {
+        for (int from = nextHeight(heights, 1); from != -1; from = nextHeight(heights, from + 1)) {
+            int lowest = lowestTarget(from, prevMove);
+            int count = from - lowest - occupied(heights, Math.max(1, lowest), from - 1);
+            if (index >= count) {
+                index -= count;
+                continue;
+            }
+            for (int to = lowest; ; to++) {
+                if ((to == 0 || !has(heights, to)) && index-- == 0) {
+                    return move(from, to);
+                }
+            }
+        }
+        throw new IllegalArgumentException("Invalid move index: " + index);
+    }
+
+    /**
+     * Plays the move on the bitset in place
+     *
+     * @param heights bitset of occupied heights
+     * @param move valid encoded move
+     */
+    static void apply(long [] heights, int move) {
+        int from = from(move);
+        int to = to(move);
+        heights[from >>> 6] &= ~(1L << from);
+        if (to != 0) {
+            heights[to >>> 6] |= 1L << to;
+        }
+    }
+
+    /**
+     * Lowest height the heap can be reduced to
+     *
+     * @param from height of the heap
+     * @param prevMove number of chips removed by previous player
+     * @return lowest target height
+     */
+    private static int lowestTarget(int from, int prevMove) {
+        return (int) Math.max(0, from - 2L * prevMove);
+    }
+
+    /**
+     * Checks if the height is occupied
+     *
+     * @param heights bitset of occupied heights
+     * @param height non-zero number of chips
+     * @return whether some heap has the height
+     */
+    private static boolean has(long [] heights, int height) {
+        int word = height >>> 6;
+        return word < heights.length && (heights[word] & (1L << height)) != 0;
+    }
+
+    /**
+     * Finds the smallest occupied height not below the given one
+     *
+     * @param heights bitset of occupied heights
+     * @param from smallest height of interest
+     * @return occupied height, or -1 if there is none
+     */
+    private static int nextHeight(long [] heights, int from) {
+        int word = from >>> 6;
+        if (word >= heights.length) {
+            return -1;
+        }
+        long bits = heights[word] & (-1L << from);
+        while (bits == 0) {
+            if (++word == heights.length) {
+                return -1;
+            }
+            bits = heights[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Number of occupied heights in the range
+     *
+     * @param heights bitset of occupied heights
+     * @param from lowest height of the range
+     * @param to highest height of the range, the range is empty if it is below from
+     * @return number of occupied heights
+     */
+    private static int occupied(long [] heights, int from, int to) {
+        int count = 0;
+        for (int word = from >>> 6; word <= to >>> 6 && from <= to; word++) {
+            long mask = -1L;
+            if (word == from >>> 6) {
+                mask &= -1L << from;
+            }
+            if (word == to >>> 6) {
+                mask &= -1L >>> (63 - (to & 63));
+            }
+            count += Long.bitCount(heights[word] & mask);
+        }
+        return count;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LargeState)) {
+            return false;
+        }
+        LargeState other = (LargeState) o;
+        return prevMove == other.prevMove && Arrays.equals(heights, other.heights);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(heights) + prevMove;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (int from = nextHeight(heights, 1); from != -1; from = nextHeight(heights, from + 1)) {
+            builder.append(builder.length() > 1 ? ", " : "").append(from);
+        }
+        return builder.append("} prevMove=").append(prevMove).toString();
+    }
+}
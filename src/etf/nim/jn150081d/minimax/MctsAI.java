@@ -0,0 +1,68 @@
+package etf.nim.jn150081d.minimax;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * MctsAI selects moves by Monte Carlo tree search, it needs no heuristic and no depth limit
+ *
+ * The tree of MonteCarloSearch holds packed states and the random games are played with MoveGenerator
+ */
+public class MctsAI extends MonteCarloSearch<Long> {
+
+    /**
+     * MctsAI constructor
+     *
+     * @param pool pool running the playouts, or null to run them on the calling thread
+     * @param playouts number of playouts per move unless the limits have a node budget
+     */
+    public MctsAI(ForkJoinPool pool, long playouts) {
+        super(pool, playouts);
+    }
+
+    @Override
+    Long rootState(Position position) {
+        long state = position.pack();
+        if (!MoveGenerator.hasMoves(state)) {
+            throw new IllegalArgumentException("No valid moves in position " + position);
+        }
+        return state;
+    }
+
+    @Override
+    int [] newBuffer() {
+        return new int [MoveGenerator.maxMoves];
+    }
+
+    @Override
+    int [] moves(Long state, int [] buffer) {
+        int count = MoveGenerator.generate(state, buffer);
+        return count == 0 ? null : Arrays.copyOf(buffer, count);
+    }
+
+    @Override
+    Long play(Long state, int move) {
+        return PackedState.play(state, MoveGenerator.column(move), MoveGenerator.row(move));
+    }
+
+    @Override
+    boolean randomGame(Long start, int [] buffer, ThreadLocalRandom random, SearchBudget budget) {
+        // a game on a packed state has at most a few hundred moves, the budget is checked after it
+        long state = start;
+        boolean onMove = true;
+        int count;
+        while ((count = MoveGenerator.generate(state, buffer)) > 0) {
+            int move = buffer[random.nextInt(count)];
+            state = PackedState.play(state, MoveGenerator.column(move), MoveGenerator.row(move));
+            onMove = !onMove;
+        }
+        // the player without a valid move loses
+        return !onMove;
+    }
+
+    @Override
+    SearchResult result(Position position, int move, float score, long nodes) {
+        return new SearchResult(MoveGenerator.column(move), MoveGenerator.row(move), score, nodes);
+    }
+}
@@ -1,104 +1,245 @@
 package etf.nim.jn150081d.minimax;
 
-import etf.nim.jn150081d.GamePanel;
-import etf.nim.jn150081d.MainFrame;
-
-import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Minimax is most basic implementation of minimax AI algorithm
+ *
+ * Every search, finished or cancelled, is added to the SearchMetrics of the engine class,
+ * its nodes while it runs
  */
-public class Minimax extends AI {
-    int prevMove;
-    int depth;
+public class Minimax implements SearchEngine {
+    long nodes;
+    long flushedNodes;
+    SearchBudget budget;
+    int depthReached;
+    SearchMetrics metrics = SearchMetrics.forEngine(getClass().getSimpleName());
+    private final ForkJoinPool pool;
 
     /**
-     * MinimaxNode represents node of the search tree (although the tree itself is not generated)
+     * Minimax constructor, search runs on the calling thread
      */
-    class MinimaxNode {
-        int [] state;
-        int prevMove;
-
-        /**
-         * MinimaxNode constructor
-         *
-         * @param state state of the game in that particular node
-         * @param prevMove number of chips removed by previous player
-         */
-        MinimaxNode(int[] state, int prevMove) {
-            this.state = state;
-            this.prevMove = prevMove;
-        }
+    public Minimax() {
+        this(null);
     }
 
     /**
      * Minimax constructor
      *
-     * @param mainFrame assigned mainFrame
-     * @param gamePanel assigned gamePanel
-     * @param callMakeMove should this AI call makeMove method or not
-     * @param prevMove number of chips removed by previous player
-     * @param depth the maximal depth of the search tree
+     * @param pool pool running the parallel search, or null to search on the calling thread
      */
-    public Minimax(MainFrame mainFrame, GamePanel gamePanel, boolean callMakeMove, int prevMove, int depth) {
-        super(mainFrame, gamePanel, callMakeMove);
-        this.prevMove = prevMove;
-        this.depth = depth;
+    public Minimax(ForkJoinPool pool) {
+        this.pool = pool;
     }
 
     /**
-     * Calculates a score for each possible move and calls makeMove is needed
+     * Calculates a score for each possible move and selects one of the best moves
+     *
+     * @param position position to be searched, must have at least one valid move
+     * @param limits configuration of the search
+     * @return selected move
      */
     @Override
-    public void run() {
-        moveStart();
+    public SearchResult search(Position position, SearchLimits limits) {
+        long state = position.pack();
+        int [] moves = new int [MoveGenerator.maxMoves];
+        int count = MoveGenerator.generate(state, moves);
+        if (count == 0) {
+            throw new IllegalArgumentException("No valid moves in position " + position);
+        }
+        nodes = 0;
+        flushedNodes = 0;
+        long startTime = System.nanoTime();
+        boolean finished = false;
+        try {
+            SearchResult result = deepen(state, moves, count, limits);
+            finished = true;
+            return result;
+        } finally {
+            publishMetrics(finished, startTime);
+        }
+    }
 
-        MinimaxNode node = new MinimaxNode(mainFrame.heapStates.clone(), prevMove);
-        ArrayList<Integer> bestMoveColumns = new ArrayList<>();
-        ArrayList<Integer> bestMoveRows = new ArrayList<>();
-        float bestMoveValue = -1;
+    /**
+     * Adds the search and the rest of its counters to the metrics of the engine class
+     *
+     * @param finished whether the search selected a move, or was cancelled or failed
+     * @param startTime time at which the search started, as returned by System.nanoTime
+     */
+    void publishMetrics(boolean finished, long startTime) {
+        flushMetrics();
+        long nanos = System.nanoTime() - startTime;
+        if (finished) {
+            metrics.recordSearch(depthReached, nanos);
+        } else {
+            metrics.recordAborted(nanos);
+        }
+    }
 
-        // iterate through first possible moves
-        for (int i = 0; i < mainFrame.heapsCo(); i++) {
-            for (int j = 0; j < mainFrame.heapStates[i]; j++) {
-                if (gamePanel.isMoveValid(i, j, node.state, node.prevMove)) {
-                    MinimaxNode newNode = new MinimaxNode(node.state.clone(), node.state[i] - j);
-                    newNode.state[i] = j;
-                    float move = iteration(newNode, depth - 1, false);
-                    if (move > bestMoveValue) {
-                        bestMoveColumns.clear();
-                        bestMoveRows.clear();
+    /**
+     * Adds the counters changed since the last call to the metrics of the engine class,
+     * called on the searching thread whenever the budget is polled
+     */
+    void flushMetrics() {
+        metrics.addNodes(nodes - flushedNodes);
+        flushedNodes = nodes;
+    }
+
+    /**
+     * Searches the first moves to the maximal depth, or deepens iteratively if the limits have a budget
+     *
+     * Every iteration searches the first moves ordered by their scores from the previous iteration.
+     * The first iteration is always completed unless the search is cancelled, later ones are abandoned
+     * once the budget is spent and the move is selected from the last completed iteration
+     *
+     * @param state packed state
+     * @param moves first moves, reordered by the search
+     * @param count number of first moves
+     * @param limits configuration of the search
+     * @return selected move
+     * @throws CancellationException when the calling thread is interrupted
+     */
+    SearchResult deepen(long state, int [] moves, int count, SearchLimits limits) {
+        SearchBudget limit = new SearchBudget(limits, this::flushMetrics);
+        float [] completed = null;
+        depthReached = 0;
+        startSearch(limits);
+        budget = limit;
+        try {
+            for (int depth = limits.isDeepening() ? 1 : limits.getDepth(); depth <= limits.getDepth(); depth++) {
+                float [] values;
+                try {
+                    values = rootValues(state, depth, moves, count);
+                } catch (SearchAborted e) {
+                    if (limit.isCancelled()) {
+                        throw new CancellationException("Search cancelled");
                     }
-                    if (move >= bestMoveValue) {
-                        bestMoveColumns.add(i);
-                        bestMoveRows.add(j);
-                        bestMoveValue = move;
+                    if (completed == null) {
+                        throw e;
                     }
+                    break;
+                }
+                orderByValue(moves, values, count);
+                completed = values;
+                depthReached = depth;
+                limit.enforce();
+                if (values[0] == 1 || values[0] == 0) {
+                    // the best move is a proven win, or every move is a proven loss, deeper search can not change it
+                    break;
                 }
             }
+        } finally {
+            budget = null;
         }
 
-        moveEnd();
+        int ties = 1;
+        while (ties < count && completed[ties] == completed[0]) {
+            ties++;
+        }
+        int move = moves[(int) (Math.random() * ties)];
+        return new SearchResult(MoveGenerator.column(move), MoveGenerator.row(move), completed[0], nodes);
+    }
 
-        int id = (int) (Math.random() * bestMoveColumns.size());
-        if (callMakeMove) {
-            gamePanel.makeMove(bestMoveColumns.get(id), bestMoveRows.get(id));
-        } else {
-            selectedColumn = bestMoveColumns.get(id);
-            selectedRow = bestMoveRows.get(id);
+    /**
+     * Calculates scores of the first moves, scores that are lower than the best one
+     * may only be upper bounds of the real scores
+     *
+     * @param state packed state
+     * @param depth the maximal depth of the search tree
+     * @param moves first moves
+     * @param count number of first moves
+     * @return score of each first move
+     */
+    float [] rootValues(long state, int depth, int [] moves, int count) {
+        if (pool != null) {
+            ParallelSearch search = new ParallelSearch(pool, isPruning(), budget);
+            try {
+                return search.rootValues(state, depth, moves, count);
+            } finally {
+                // workers count their own nodes, which are added once the iteration ends
+                nodes += search.getNodes();
+                flushMetrics();
+            }
         }
+
+        float [] values = new float [count];
+        float bestMoveValue = -1;
+        for (int k = 0; k < count; k++) {
+            // moves scoring below the best one only need an upper bound
+            float alpha = Math.max(0, Math.nextDown(bestMoveValue));
+            long child = PackedState.play(state, MoveGenerator.column(moves[k]), MoveGenerator.row(moves[k]));
+            values[k] = rootIteration(child, depth, alpha);
+            bestMoveValue = Math.max(bestMoveValue, values[k]);
+        }
+        return values;
+    }
+
+    /**
+     * Sorts the moves by descending score, keeping the order of moves with equal scores
+     *
+     * @param moves first moves
+     * @param values score of each first move, sorted along with the moves
+     * @param count number of first moves
+     */
+    static void orderByValue(int [] moves, float [] values, int count) {
+        for (int k = 1; k < count; k++) {
+            int move = moves[k];
+            float value = values[k];
+            int i = k - 1;
+            while (i >= 0 && values[i] < value) {
+                moves[i + 1] = moves[i];
+                values[i + 1] = values[i];
+                i--;
+            }
+            moves[i + 1] = move;
+            values[i + 1] = value;
+        }
+    }
+
+    /**
+     * Prepares per search state of the algorithm, called before the first iteration
+     *
+     * @param limits configuration of the search
+     */
+    void startSearch(SearchLimits limits) {
+    }
+
+    /**
+     * Does this algorithm skip moves that can not change the result
+     *
+     * @return whether alpha-beta cutoffs are used
+     */
+    boolean isPruning() {
+        return false;
+    }
+
+    /**
+     * Calculates the score of the state reached by one of the first possible moves
+     *
+     * @param state packed state after the first move
+     * @param depth the maximal depth of the search tree
+     * @param alpha minimal score the move needs to be selected, ignored by the plain minimax
+     * @return returns the score of the first move
+     */
+    float rootIteration(long state, int depth, float alpha) {
+        return iteration(state, depth - 1, false);
     }
 
     /**
      * Recursively calculates a score for each possible move until the maximal search depth
      *
-     * @param node state in which next move information is needed
+     * @param state packed state in which next move information is needed
      * @param depth current depth
      * @param maxPlayer is the player on the move maximizing or minimizing score
      * @return returns the score of starting state
      */
-    private float iteration(MinimaxNode node, int depth, boolean maxPlayer) {
-        if (gamePanel.isGameFinished(node.state, mainFrame.heapsCo())) {
+    private float iteration(long state, int depth, boolean maxPlayer) {
+        nodes++;
+        if (budget != null) {
+            budget.poll(nodes);
+        }
+        if (PackedState.isFinished(state)) {
             if (maxPlayer) {
                 return 0;
             } else {
@@ -106,14 +247,7 @@ public class Minimax extends AI {
             }
         }
 
-        int heuristic = node.state[0];
-        for (int i = 1; i < mainFrame.heapsCo(); i++) {
-            heuristic ^= node.state[i]; // xor
-        }
-        float ret = 0.5f;
-        if (heuristic == 0) {
-            ret = 0.8f;
-        }
+        float ret = PackedState.heuristic(state);
 
         if (depth == 0) {
             // return heuristic value
@@ -128,30 +262,26 @@ public class Minimax extends AI {
         if (maxPlayer) {
             // find best next move
             float bestValue = 0;
-            for (int i = 0; i < mainFrame.heapsCo(); i++) {
-                for (int j = 0; j < node.state[i]; j++) {
-                    if (gamePanel.isMoveValid(i, j, node.state, node.prevMove)) {
-                        MinimaxNode newNode = new MinimaxNode(node.state.clone(), node.state[i] - j);
-                        newNode.state[i] = j;
-                        float value = iteration(newNode, depth - 1, false);
-                        if (value == -1) {
-                            value = ret;
-                        }
-                        bestValue = Math.max(bestValue, value);
+            for (int i = 0; i < PackedState.maxHeaps; i++) {
+                for (int rows = MoveGenerator.legalRows(state, i); rows != 0; rows &= rows - 1) {
+                    int j = Integer.numberOfTrailingZeros(rows);
+                    long child = PackedState.play(state, i, j);
+                    float value = iteration(child, depth - 1, false);
+                    if (value == -1) {
+                        value = ret;
                     }
+                    bestValue = Math.max(bestValue, value);
                 }
             }
             return bestValue;
         } else {
             // find worst next move
             float bestValue = 1;
-            for (int i = 0; i < mainFrame.heapsCo(); i++) {
-                for (int j = 0; j < node.state[i]; j++) {
-                    if (gamePanel.isMoveValid(i, j, node.state, node.prevMove)) {
-                        MinimaxNode newNode = new MinimaxNode(node.state.clone(), node.state[i] - j);
-                        newNode.state[i] = j;
-                        bestValue = Math.min(bestValue, iteration(newNode, depth - 1, true));
-                    }
+            for (int i = 0; i < PackedState.maxHeaps; i++) {
+                for (int rows = MoveGenerator.legalRows(state, i); rows != 0; rows &= rows - 1) {
+                    int j = Integer.numberOfTrailingZeros(rows);
+                    long child = PackedState.play(state, i, j);
+                    bestValue = Math.min(bestValue, iteration(child, depth - 1, true));
                 }
             }
             return bestValue;
@@ -0,0 +1,472 @@
+package etf.nim.jn150081d.minimax;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MonteCarloSearch is the Monte Carlo tree search of MctsAI and LargeBoardAI, the engines only
+ * supply the valid moves of their states and the random games
+ *
+ * Every playout walks down the tree choosing children by UCT, expands the node it ends in once
+ * it has been visited a few times, plays random moves to the end of the game and adds the result
+ * to the statistics of every node on the way. The move of the most visited child is selected.
+ * Children of a node are only created for moves that are selected, and unvisited moves are tried in random order
+ *
+ * With a pool, all its threads run playouts on the same tree. Statistics are updated with atomic adds and
+ * children are published with a compare-and-set, so no locks are taken, and each playout in progress
+ * counts as a few lost visits of its nodes, the virtual loss, so other threads prefer different paths
+ *
+ * The subtree of the position reached after the opponent's reply is kept for the next search
+ *
+ * @param <S> state of the nodes, equal states are the same position
+ */
+abstract class MonteCarloSearch<S> implements SearchEngine {
+
+    private static final double exploration = Math.sqrt(2);
+    private static final int virtualLoss = 3;
+    private static final int expandVisits = 4;
+    private static final int maxTreeNodes = 1 << 20;
+
+    private final ForkJoinPool pool;
+    private final long playouts;
+    private final AtomicInteger treeNodes = new AtomicInteger();
+    private Node<S> root;
+
+    /**
+     * Node of the search tree, its statistics are from the point of view of the player that moved into it
+     *
+     * @param <S> state of the node
+     */
+    private static final class Node<S> {
+        private static final VarHandle visitsHandle;
+        private static final VarHandle winsHandle;
+        private static final VarHandle pendingHandle;
+        private static final VarHandle movesHandle;
+        private static final VarHandle childrenHandle;
+        private static final VarHandle slotHandle = MethodHandles.arrayElementVarHandle(Node [].class);
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                visitsHandle = lookup.findVarHandle(Node.class, "visits", int.class);
+                winsHandle = lookup.findVarHandle(Node.class, "wins", int.class);
+                pendingHandle = lookup.findVarHandle(Node.class, "pending", int.class);
+                movesHandle = lookup.findVarHandle(Node.class, "moves", int [].class);
+                childrenHandle = lookup.findVarHandle(Node.class, "children", Node [].class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        final S state;
+        final int move;
+        volatile int visits;
+        volatile int wins;
+        volatile int pending;
+        volatile int [] moves;
+        volatile Node<S> [] children;
+
+        /**
+         * Node constructor
+         *
+         * @param state state of the node
+         * @param move move leading to the state encoded by the engine, or -1 for the root
+         */
+        Node(S state, int move) {
+            this.state = state;
+            this.move = move;
+        }
+
+        /**
+         * Marks the start of a playout through the node
+         */
+        void enter() {
+            pendingHandle.getAndAdd(this, 1);
+        }
+
+        /**
+         * Adds the result of a playout through the node
+         *
+         * @param win did the player that moved into the node win
+         */
+        void update(boolean win) {
+            visitsHandle.getAndAdd(this, 1);
+            if (win) {
+                winsHandle.getAndAdd(this, 1);
+            }
+            pendingHandle.getAndAdd(this, -1);
+        }
+
+        /**
+         * Marks the end of a playout through the node that was abandoned without a result
+         */
+        void leave() {
+            pendingHandle.getAndAdd(this, -1);
+        }
+
+        /**
+         * Publishes the child of the move at the index unless another thread already did
+         *
+         * @param index index of the move
+         * @param created created child
+         * @return child of the move
+         */
+        @SuppressWarnings("unchecked")
+        Node<S> publish(int index, Node<S> created) {
+            Node<S> witness = (Node<S>) slotHandle.compareAndExchange(children, index, (Node<S>) null, created);
+            return witness == null ? created : witness;
+        }
+
+        /**
+         * Publishes the shuffled moves and the slots for their children unless another thread already did
+         *
+         * @param created shuffled valid moves
+         * @return moves of the node
+         */
+        int [] publish(int [] created) {
+            // slots are published first, readers check the moves
+            childrenHandle.compareAndSet(this, (Node<S> []) null, new Node<?> [created.length]);
+            int [] witness = (int []) movesHandle.compareAndExchange(this, (int []) null, created);
+            return witness == null ? created : witness;
+        }
+    }
+
+    /**
+     * MonteCarloSearch constructor
+     *
+     * @param pool pool running the playouts, or null to run them on the calling thread
+     * @param playouts number of playouts per move unless the limits have a node budget
+     */
+    MonteCarloSearch(ForkJoinPool pool, long playouts) {
+        if (playouts < 1) {
+            throw new IllegalArgumentException("Number of playouts must be positive: " + playouts);
+        }
+        this.pool = pool;
+        this.playouts = playouts;
+    }
+
+    /**
+     * Converts the position to the state of the root
+     *
+     * @param position position to be searched
+     * @return state of the position
+     * @throws IllegalArgumentException if there are no valid moves in the position
+     */
+    abstract S rootState(Position position);
+
+    /**
+     * Creates the move buffer of a playout thread, passed to every call of moves and randomGame on the thread
+     *
+     * @return move buffer, or null if the engine needs none
+     */
+    abstract int [] newBuffer();
+
+    /**
+     * Valid moves of the state
+     *
+     * @param state state of a node
+     * @param buffer move buffer of the thread
+     * @return new array of the encoded moves, or null if there are no valid moves
+     */
+    abstract int [] moves(S state, int [] buffer);
+
+    /**
+     * Generates the state after the move
+     *
+     * @param state state of a node
+     * @param move valid encoded move
+     * @return new state
+     */
+    abstract S play(S state, int move);
+
+    /**
+     * Plays random moves until the player on the move has no valid move, engines with long games
+     * check the budget every so many moves
+     *
+     * @param state state to start from
+     * @param buffer move buffer of the thread
+     * @param random random number generator of the thread
+     * @param budget budget of the search
+     * @return whether the player on the move in the state wins
+     * @throws SearchAborted when the search is cancelled or the budget is spent during the game
+     */
+    abstract boolean randomGame(S state, int [] buffer, ThreadLocalRandom random, SearchBudget budget);
+
+    /**
+     * Converts the selected move to the result of the search
+     *
+     * @param position searched position
+     * @param move selected encoded move
+     * @param score share of won playouts through the move
+     * @param nodes number of playouts
+     * @return result of the search
+     */
+    abstract SearchResult result(Position position, int move, float score, long nodes);
+
+    /**
+     * Runs playouts until the playout or the time budget is spent and selects the most visited move
+     *
+     * @param position position to be searched, must have at least one valid move
+     * @param limits configuration of the search, the node budget is the number of playouts and the depth is ignored
+     * @return selected move, scored by its share of won playouts
+     */
+    @Override
+    public SearchResult search(Position position, SearchLimits limits) {
+        root = reusedRoot(rootState(position));
+        expand(root, true, newBuffer());
+        SearchBudget budget = new SearchBudget(new SearchLimits(limits.getDepth(), limits.getTime(),
+                limits.getNodes() > 0 ? limits.getNodes() : playouts));
+        budget.enforce();
+        AtomicLong done = new AtomicLong();
+        if (pool == null) {
+            run(budget, done);
+        } else {
+            runParallel(budget, done);
+        }
+        if (budget.isCancelled()) {
+            throw new CancellationException("Search cancelled");
+        }
+
+        Node<S> best = null;
+        for (Node<S> child : root.children) {
+            if (child != null && (best == null || child.visits > best.visits)) {
+                best = child;
+            }
+        }
+        int move = best != null ? best.move : root.moves[0];
+        float score = best == null || best.visits == 0 ? 0.5f : (float) best.wins / best.visits;
+        return result(position, move, score, done.get());
+    }
+
+    /**
+     * Runs the playouts on every thread of the pool
+     *
+     * @param budget budget stopping the playouts
+     * @param done number of finished playouts
+     */
+    private void runParallel(SearchBudget budget, AtomicLong done) {
+        List<RecursiveAction> workers = new ArrayList<>(pool.getParallelism());
+        for (int k = 0; k < pool.getParallelism(); k++) {
+            workers.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    run(budget, done);
+                }
+            });
+        }
+        ForkJoinTask<Void> task = pool.submit(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(workers);
+            }
+        });
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            // the pool does not see the interrupt of a waiting caller, so the workers are told directly
+            budget.cancel();
+            task.quietlyJoin();
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Runs playouts until the budget is spent
+     *
+     * @param budget budget stopping the playouts
+     * @param done number of finished playouts
+     */
+    private void run(SearchBudget budget, AtomicLong done) {
+        List<Node<S>> path = new ArrayList<>();
+        int [] buffer = newBuffer();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            while (true) {
+                playout(path, buffer, random, budget);
+                // a playout on a large board is long, so the budget and the cancellation are checked after each one
+                budget.check(done.incrementAndGet());
+            }
+        } catch (SearchAborted e) {
+            // budget is spent or the search is cancelled
+        }
+    }
+
+    /**
+     * Walks down the tree, plays the game out randomly and updates the nodes on the way
+     *
+     * @param path buffer for the visited nodes
+     * @param buffer move buffer of the thread
+     * @param random random number generator of the thread
+     * @param budget budget of the search
+     * @throws SearchAborted when the search is cancelled or the budget is spent during the random game
+     */
+    private void playout(List<Node<S>> path, int [] buffer, ThreadLocalRandom random, SearchBudget budget) {
+        path.clear();
+        Node<S> node = root;
+        node.enter();
+        path.add(node);
+        while (true) {
+            int [] moves = node.moves;
+            if (moves == null && node.visits >= expandVisits) {
+                moves = expand(node, false, buffer);
+            }
+            if (moves == null) {
+                break;
+            }
+            node = select(node, moves);
+            node.enter();
+            path.add(node);
+        }
+
+        // the player on the move in the last node of the path
+        boolean win;
+        try {
+            win = randomGame(node.state, buffer, random, budget);
+        } catch (SearchAborted e) {
+            // the tree is kept for the next search, so the virtual loss of the playout is removed
+            for (Node<S> visited : path) {
+                visited.leave();
+            }
+            throw e;
+        }
+        for (int k = path.size() - 1; k >= 0; k--) {
+            win = !win;
+            path.get(k).update(win);
+        }
+    }
+
+    /**
+     * Selects the child with the highest upper confidence bound, creating the first child not tried yet,
+     * playouts in progress count as lost
+     *
+     * @param parent node being walked through
+     * @param moves shuffled valid moves of the node
+     * @return selected child
+     */
+    private Node<S> select(Node<S> parent, int [] moves) {
+        Node<S> [] children = parent.children;
+        double logVisits = Math.log(Math.max(1, parent.visits + virtualLoss * parent.pending));
+        Node<S> best = null;
+        double bestValue = -1;
+        for (int k = 0; k < children.length; k++) {
+            Node<S> child = children[k];
+            if (child == null) {
+                Node<S> created = new Node<>(play(parent.state, moves[k]), moves[k]);
+                Node<S> published = parent.publish(k, created);
+                if (published == created) {
+                    treeNodes.incrementAndGet();
+                }
+                return published;
+            }
+            int visits = child.visits + virtualLoss * child.pending;
+            if (visits == 0) {
+                return child;
+            }
+            double value = (double) child.wins / visits + exploration * Math.sqrt(logVisits / visits);
+            if (value > bestValue) {
+                best = child;
+                bestValue = value;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Lists the moves of the node in random order if the tree is not full
+     *
+     * @param node node to be expanded
+     * @param force expand even if the tree is full
+     * @param buffer move buffer of the thread
+     * @return shuffled moves of the node, or null if there are no valid moves or the tree is full
+     */
+    private int [] expand(Node<S> node, boolean force, int [] buffer) {
+        int [] moves = node.moves;
+        if (moves != null) {
+            return moves;
+        }
+        if (!force && treeNodes.get() >= maxTreeNodes) {
+            return null;
+        }
+        moves = moves(node.state, buffer);
+        if (moves == null) {
+            return null;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int k = moves.length - 1; k > 0; k--) {
+            int j = random.nextInt(k + 1);
+            int move = moves[k];
+            moves[k] = moves[j];
+            moves[j] = move;
+        }
+        return node.publish(moves);
+    }
+
+    /**
+     * Finds the node of the state among the previous root, its children and grandchildren,
+     * the rest of the previous tree is dropped
+     *
+     * @param state state of the position to be searched
+     * @return node of the state with its subtree, or a new node
+     */
+    private Node<S> reusedRoot(S state) {
+        Node<S> found = null;
+        if (root != null) {
+            if (root.state.equals(state)) {
+                found = root;
+            } else if (root.children != null) {
+                for (Node<S> child : root.children) {
+                    if (child == null) {
+                        continue;
+                    }
+                    if (child.state.equals(state)) {
+                        found = child;
+                    } else if (child.children != null) {
+                        for (Node<S> grandchild : child.children) {
+                            if (grandchild != null && grandchild.state.equals(state)) {
+                                found = grandchild;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if (found == null) {
+            found = new Node<>(state, -1);
+        }
+        treeNodes.set(size(found));
+        return found;
+    }
+
+    /**
+     * Number of nodes in the subtree
+     *
+     * @param node root of the subtree
+     * @return number of nodes
+     */
+    private static int size(Node<?> node) {
+        int size = 1;
+        Node<?> [] children = node.children;
+        if (children != null) {
+            for (Node<?> child : children) {
+                if (child != null) {
+                    size += size(child);
+                }
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,131 @@
+package etf.nim.jn150081d.minimax;
+
+/**
+ * MoveGenerator produces legal moves of a packed state using the occupied heights bitmask,
+ * instead of checking every heap for every (column, row) pair
+ *
+ * Moves are encoded as (column << 4) | row, in the same column-then-row order the game loops use
+ */
+public final class MoveGenerator {
+    public static final int maxMoves = PackedState.maxHeaps * PackedState.maxHeight;
+
+    private static final int rowBits = 4;
+    private static final int rowMask = (1 << rowBits) - 1;
+
+    /**
+     * Static helper class, not to be instantiated
+     */
+    private MoveGenerator() {}
+
+    /**
+     * Rows to which the selected heap can be reduced
+     *
+     * A row is legal if it is below the current height, no more than 2 * prevMove chips are removed,
+     * and no other non-empty heap has that height
+     *
+     * @param state packed state
+     * @param column index of the heap
+     * @return bitmask with bit j set when the move (column, j) is valid
+     */
+    public static int legalRows(long state, int column) {
+        int height = PackedState.height(state, column);
+        int lowest = Math.max(0, height - 2 * PackedState.prevMove(state));
+        int range = (1 << height) - (1 << lowest);
+        return range & ~PackedState.occupied(state);
+    }
+
+    /**
+     * Checks if desired move is valid in the packed state
+     *
+     * @param state packed state
+     * @param column column of the selected chip
+     * @param row row of the selected chip
+     * @return whether the desired move is valid
+     */
+    public static boolean isLegal(long state, int column, int row) {
+        if (column < 0 || column >= PackedState.maxHeaps || row < 0 || row >= PackedState.maxHeight) {
+            return false;
+        }
+        return (legalRows(state, column) & (1 << row)) != 0;
+    }
+
+    /**
+     * Checks if desired move is valid, given the heap states of the game
+     *
+     * @param states states of heaps
+     * @param heapsCo number of heaps
+     * @param prevMove number of chips removed in the previous move
+     * @param column column of the selected chip
+     * @param row row of the selected chip
+     * @return whether the desired move is valid
+     */
+    public static boolean isMoveValid(int [] states, int heapsCo, int prevMove, int column, int row) {
+        if (column < 0 || column >= heapsCo) {
+            return false;
+        }
+        return isLegal(PackedState.pack(states, heapsCo, prevMove), column, row);
+    }
+
+    /**
+     * Checks if there is at least one valid move
+     *
+     * @param state packed state
+     * @return whether any valid moves are available
+     */
+    public static boolean hasMoves(long state) {
+        for (int i = 0; i < PackedState.maxHeaps; i++) {
+            if (legalRows(state, i) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes all legal moves of the state to the given buffer
+     *
+     * @param state packed state
+     * @param moves buffer of at least maxMoves entries
+     * @return number of generated moves
+     */
+    public static int generate(long state, int [] moves) {
+        int count = 0;
+        for (int i = 0; i < PackedState.maxHeaps; i++) {
+            for (int rows = legalRows(state, i); rows != 0; rows &= rows - 1) {
+                moves[count++] = move(i, Integer.numberOfTrailingZeros(rows));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Encodes a move
+     *
+     * @param column column of the selected chip
+     * @param row row of the selected chip
+     * @return encoded move
+     */
+    public static int move(int column, int row) {
+        return (column << rowBits) | row;
+    }
+
+    /**
+     * Column of the encoded move
+     *
+     * @param move encoded move
+     * @return column of the selected chip
+     */
+    public static int column(int move) {
+        return move >>> rowBits;
+    }
+
+    /**
+     * Row of the encoded move
+     *
+     * @param move encoded move
+     * @return row of the selected chip
+     */
+    public static int row(int move) {
+        return move & rowMask;
+    }
+}
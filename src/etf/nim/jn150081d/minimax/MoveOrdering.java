@@ -0,0 +1,141 @@
+package etf.nim.jn150081d.minimax;
+
+import java.util.Arrays;
+
+/**
+ * MoveOrdering sorts the generated moves so that the moves most likely to cause a cutoff are searched first
+ *
+ * The transposition table move goes first, then the moves leaving zero nim-sum, then the two killer moves
+ * of the ply, which caused a cutoff in a sibling node, and the rest by their history score. Killers and
+ * history identify a move by the height of the heap and the row, since heap order is not part of the position
+ *
+ * Every cutoff is counted, along with the ones caused by the first searched move. The first move cutoff rate
+ * is close to 1 when the ordering is good, and effective branching of the search drops with it
+ */
+public final class MoveOrdering {
+    private static final int hashScore = 1 << 30;
+    private static final int zeroNimSumScore = 1 << 29;
+    private static final int killerScore = 1 << 28;
+    private static final int maxHistory = killerScore - 2;
+
+    private int [][] killers = new int [0][];
+    private final int [] history = new int [(PackedState.maxHeight + 1) << 4];
+    private final int [] scores = new int [MoveGenerator.maxMoves];
+    private long cutoffs;
+    private long firstMoveCutoffs;
+
+    /**
+     * Prepares the ordering for a new search, killers are forgotten and history scores are halved
+     *
+     * @param maxPly the maximal distance from the root of a searched node
+     */
+    void newSearch(int maxPly) {
+        if (killers.length <= maxPly) {
+            killers = new int [maxPly + 1][2];
+        }
+        for (int [] plyKillers : killers) {
+            Arrays.fill(plyKillers, -1);
+        }
+        for (int i = 0; i < history.length; i++) {
+            history[i] >>= 1;
+        }
+    }
+
+    /**
+     * Sorts the moves by descending ordering score, keeping the order of moves with equal scores
+     *
+     * @param state packed state
+     * @param moves generated moves
+     * @param count number of generated moves
+     * @param ply distance from the root
+     * @param hashMove move recorded in the transposition table encoded as returned by MoveGenerator, or -1
+     */
+    void order(long state, int [] moves, int count, int ply, int hashMove) {
+        int nimSum = PackedState.nimSum(state);
+        for (int k = 0; k < count; k++) {
+            int move = moves[k];
+            int height = PackedState.height(state, MoveGenerator.column(move));
+            int row = MoveGenerator.row(move);
+            int key = (height << 4) | row;
+            int score;
+            if (move == hashMove) {
+                score = hashScore;
+            } else if ((nimSum ^ height ^ row) == 0) {
+                score = zeroNimSumScore;
+            } else if (key == killers[ply][0]) {
+                score = killerScore;
+            } else if (key == killers[ply][1]) {
+                score = killerScore - 1;
+            } else {
+                score = history[key];
+            }
+
+            int i = k - 1;
+            while (i >= 0 && scores[i] < score) {
+                moves[i + 1] = moves[i];
+                scores[i + 1] = scores[i];
+                i--;
+            }
+            moves[i + 1] = move;
+            scores[i + 1] = score;
+        }
+    }
+
+    /**
+     * Records the move that caused a cutoff as a killer of the ply and raises its history score
+     *
+     * @param state packed state
+     * @param move move that caused the cutoff
+     * @param ply distance from the root
+     * @param depth remaining depth of the node, deeper cutoffs weigh more
+     * @param first was the move the first one searched
+     */
+    void cutoff(long state, int move, int ply, int depth, boolean first) {
+        cutoffs++;
+        if (first) {
+            firstMoveCutoffs++;
+        }
+        int key = (PackedState.height(state, MoveGenerator.column(move)) << 4) | MoveGenerator.row(move);
+        int [] plyKillers = killers[ply];
+        if (plyKillers[0] != key) {
+            plyKillers[1] = plyKillers[0];
+            plyKillers[0] = key;
+        }
+        history[key] = Math.min(maxHistory, history[key] + depth * depth);
+    }
+
+    /**
+     * Number of cutoffs since the last reset
+     *
+     * @return number of nodes searched only partially
+     */
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    /**
+     * Number of cutoffs caused by the first searched move since the last reset
+     *
+     * @return number of nodes where only the first move was searched
+     */
+    public long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    /**
+     * Share of cutoffs caused by the first searched move since the last reset
+     *
+     * @return first move cutoff rate, or 0 if there were no cutoffs
+     */
+    public double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : (double) firstMoveCutoffs / cutoffs;
+    }
+
+    /**
+     * Resets the cutoff counters
+     */
+    public void resetStatistics() {
+        cutoffs = 0;
+        firstMoveCutoffs = 0;
+    }
+}
@@ -0,0 +1,105 @@
+package etf.nim.jn150081d.minimax;
+
+/**
+ * MtdfAI is ProAI driven by null-window searches
+ *
+ * Every first move is first tested with a null window at the best score found so far, which only
+ * proves the move is not better and visits far fewer states than a full window. Moves that pass the test
+ * get their exact score by MTD(f), a sequence of null-window searches converging from a guess, and the
+ * bounds recorded to the transposition table by each search make the following ones cheap. Scores take
+ * only a few distinct values, so the sequence is short
+ *
+ * With more than one thread the helpers are ordinary ProAI searches filling the same table
+ */
+public class MtdfAI extends ProAI {
+
+    private float guess;
+
+    /**
+     * MtdfAI constructor, positions are always searched and recorded to the shared transposition table
+     */
+    public MtdfAI() {
+        this(TranspositionTable.getDefault(), 1);
+    }
+
+    /**
+     * MtdfAI constructor, positions are always searched
+     *
+     * @param table transposition table for recorded states, may be shared with other engines
+     * @param threads number of threads searching each position, including the calling thread
+     */
+    public MtdfAI(TranspositionTable table, int threads) {
+        super(null, table, threads);
+    }
+
+    /**
+     * Prepares the search, the first guess is the score of an unsolved position
+     *
+     * @param limits configuration of the search
+     */
+    @Override
+    void startSearch(SearchLimits limits) {
+        super.startSearch(limits);
+        guess = 0.5f;
+    }
+
+    /**
+     * Calculates scores of the first moves, scores that are lower than the best one
+     * are only upper bounds of the real scores
+     *
+     * @param state packed state
+     * @param depth the maximal depth of the search tree
+     * @param moves first moves
+     * @param count number of first moves
+     * @return score of each first move
+     */
+    @Override
+    float [] rootValues(long state, int depth, int [] moves, int count) {
+        if (depth == 1) {
+            // first moves reach the end of the tree, there is nothing to narrow
+            return super.rootValues(state, depth, moves, count);
+        }
+
+        float [] values = new float [count];
+        float bestMoveValue = 0;
+        for (int k = 0; k < count; k++) {
+            long child = PackedState.play(state, MoveGenerator.column(moves[k]), MoveGenerator.row(moves[k]));
+            if (k == 0 || bestMoveValue == 0) {
+                values[k] = mtdf(child, depth, guess);
+            } else {
+                // null window test, does the move reach the best score
+                float value = rootIteration(child, depth, Math.nextDown(bestMoveValue), bestMoveValue);
+                values[k] = value < bestMoveValue ? value : mtdf(child, depth, value);
+            }
+            bestMoveValue = Math.max(bestMoveValue, values[k]);
+        }
+        // best score of this iteration is the guess of the next one
+        guess = bestMoveValue;
+        return values;
+    }
+
+    /**
+     * Narrows the bounds of the score with null-window searches until they meet, windows stay
+     * within the scores, so a score of 0 or 1 is never only a bound and can be recorded as proven
+     *
+     * @param state packed state after the first move
+     * @param depth the maximal depth of the search tree
+     * @param guess expected score of the first move
+     * @return exact score of the first move
+     */
+    private float mtdf(long state, int depth, float guess) {
+        float lower = 0;
+        float upper = 1;
+        float value = guess;
+        while (lower < upper) {
+            float beta = value == lower ? Math.nextUp(value) : value;
+            value = rootIteration(state, depth, Math.nextDown(beta), beta);
+            if (value < beta) {
+                upper = value;
+            } else {
+                lower = value;
+            }
+        }
+        return value;
+    }
+}
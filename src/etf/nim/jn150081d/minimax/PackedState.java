@@ -0,0 +1,161 @@
+package etf.nim.jn150081d.minimax;
+
+/**
+ * PackedState packs a whole game position into a single long, so the search can generate
+ * and undo children on the stack without allocating nodes or cloning arrays
+ *
+ * Layout: heap i occupies 4 bits starting at bit 4 * i (heights 0 - 15, up to 10 heaps),
+ * number of chips removed by the previous player is stored in bits 40 - 44 and bits 48 - 63 hold
+ * the set of occupied non-zero heights (bit 48 + h is set when some heap has height h)
+ */
+public final class PackedState {
+    public static final int maxHeaps = 10;
+    public static final int maxHeight = 15;
+
+    private static final int heightBits = 4;
+    private static final long heightMask = (1L << heightBits) - 1;
+    private static final long heapsMask = (1L << (maxHeaps * heightBits)) - 1;
+    private static final int prevMoveShift = maxHeaps * heightBits;
+    private static final long prevMoveMask = 31;
+    private static final int occupiedShift = 48;
+
+    /**
+     * Static helper class, not to be instantiated
+     */
+    private PackedState() {}
+
+    /**
+     * Packs heap states and the previous move into a single long
+     *
+     * @param states states of heaps
+     * @param numHeaps number of heaps in the game
+     * @param prevMove number of chips removed by previous player
+     * @return packed state
+     */
+    public static long pack(int [] states, int numHeaps, int prevMove) {
+        long state = 0;
+        for (int i = 0; i < numHeaps; i++) {
+            state |= (long) states[i] << (i * heightBits);
+            if (states[i] != 0) {
+                state |= 1L << (occupiedShift + states[i]);
+            }
+        }
+        return withPrevMove(state, prevMove);
+    }
+
+    /**
+     * Height of the selected heap
+     *
+     * @param state packed state
+     * @param column index of the heap
+     * @return number of chips on the heap
+     */
+    public static int height(long state, int column) {
+        return (int) ((state >>> (column * heightBits)) & heightMask);
+    }
+
+    /**
+     * Number of chips removed by the previous player
+     *
+     * @param state packed state
+     * @return previous move
+     */
+    public static int prevMove(long state) {
+        return (int) ((state >>> prevMoveShift) & prevMoveMask);
+    }
+
+    /**
+     * Set of non-zero heights currently present on the heaps
+     *
+     * @param state packed state
+     * @return bitmask with bit h set when some heap has height h
+     */
+    public static int occupied(long state) {
+        return (int) (state >>> occupiedShift);
+    }
+
+    /**
+     * Finds the heap with the given non-zero height, heights of non-empty heaps are always distinct
+     *
+     * @param state packed state
+     * @param height number of chips
+     * @return index of the heap, or -1 if there is no such heap
+     */
+    public static int column(long state, int height) {
+        for (int i = 0; i < maxHeaps; i++) {
+            if (height(state, i) == height) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if there are no more chips on the heaps
+     *
+     * @param state packed state
+     * @return whether game is finished
+     */
+    public static boolean isFinished(long state) {
+        return (state & heapsMask) == 0;
+    }
+
+    /**
+     * Xor of all heap heights, computed by folding the 4 bit fields onto each other
+     *
+     * @param state packed state
+     * @return nim sum of the position
+     */
+    public static int nimSum(long state) {
+        long x = state & heapsMask;
+        x ^= x >>> 32;
+        x ^= x >>> 16;
+        x ^= x >>> 8;
+        x ^= x >>> 4;
+        return (int) (x & heightMask);
+    }
+
+    /**
+     * Heuristic value of the state for the maximizing player, positions with nim sum 0 are
+     * more likely to be lost by the player on the move
+     *
+     * @param state packed state
+     * @return heuristic value of the state
+     */
+    public static float heuristic(long state) {
+        return nimSum(state) == 0 ? 0.8f : 0.5f;
+    }
+
+    /**
+     * Generates the child state, parent stays untouched so undoing the move is free
+     *
+     * @param state packed state
+     * @param column column of the selected chip
+     * @param row row of the selected chip
+     * @return state after the move
+     */
+    public static long play(long state, int column, int row) {
+        int shift = column * heightBits;
+        long height = (state >>> shift) & heightMask;
+        state = (state & ~(heightMask << shift)) | ((long) row << shift);
+        state &= ~(1L << (occupiedShift + height));
+        if (row != 0) {
+            state |= 1L << (occupiedShift + row);
+        }
+        long removed = height - row;
+        return (state & ~(prevMoveMask << prevMoveShift)) | (removed << prevMoveShift);
+    }
+
+    /**
+     * Replaces the previous move, values larger than the field are saturated
+     * since they no longer restrict any move
+     *
+     * @param state packed state
+     * @param prevMove number of chips removed by previous player
+     * @return updated state
+     */
+    private static long withPrevMove(long state, int prevMove) {
+        long value = Math.min(prevMove, prevMoveMask);
+        return (state & ~(prevMoveMask << prevMoveShift)) | (value << prevMoveShift);
+    }
+}
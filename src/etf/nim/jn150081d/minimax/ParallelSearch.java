@@ -0,0 +1,302 @@
+package etf.nim.jn150081d.minimax;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ParallelSearch runs the Minimax and AlphaBeta algorithms on a fork/join pool
+ *
+ * First moves are searched in parallel, sharing the best score found so far as the lower bound.
+ * Deeper nodes are split Young Brothers Wait style: the first move is searched alone, and only
+ * if it does not cause a cutoff the remaining moves are searched in parallel, every task starting
+ * with the bounds tightened by its already finished brothers. A cutoff aborts the brothers still running
+ *
+ * Scores of first moves that can be the best are always exact, so the selected moves are the
+ * same as the ones of the serial search
+ */
+final class ParallelSearch {
+    private static final int splitDepth = 3;
+
+    private final ForkJoinPool pool;
+    private final boolean pruning;
+    private final SearchBudget budget;
+    private final LongAdder nodes = new LongAdder();
+
+    /**
+     * SplitPoint holds the shared state of a node whose moves are searched in parallel
+     */
+    private static final class SplitPoint {
+        final SplitPoint parent;
+        final boolean maxPlayer;
+        final float ret;
+        float alpha;
+        float beta;
+        float bestValue;
+        volatile boolean aborted;
+
+        /**
+         * SplitPoint constructor
+         *
+         * @param parent closest split point above this node, or null
+         * @param maxPlayer is the player on the move maximizing or minimizing score
+         * @param ret heuristic value of the node
+         * @param alpha current minimal guaranteed score
+         * @param beta current maximal possible score
+         * @param bestValue score of the moves searched so far
+         */
+        SplitPoint(SplitPoint parent, boolean maxPlayer, float ret, float alpha, float beta, float bestValue) {
+            this.parent = parent;
+            this.maxPlayer = maxPlayer;
+            this.ret = ret;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.bestValue = bestValue;
+        }
+
+        /**
+         * Adds the score of a finished move, aborts the remaining moves on cutoff
+         *
+         * @param value score of the move
+         * @param pruning are cutoffs allowed
+         */
+        synchronized void update(float value, boolean pruning) {
+            if (maxPlayer) {
+                if (value == -1) value = ret;
+                bestValue = Math.max(bestValue, value);
+                alpha = Math.max(alpha, bestValue);
+            } else {
+                bestValue = Math.min(bestValue, value);
+                beta = Math.min(beta, bestValue);
+            }
+            if (pruning && beta <= alpha) {
+                aborted = true;
+            }
+        }
+
+        /**
+         * Checks if this node or any node above it has been cut off
+         *
+         * @return whether the result of the search below this node is no longer needed
+         */
+        boolean isAborted() {
+            for (SplitPoint split = this; split != null; split = split.parent) {
+                if (split.aborted) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * MoveTask searches one of the moves of a split point
+     */
+    private final class MoveTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final SplitPoint split;
+        private final long state;
+        private final int depth;
+
+        /**
+         * MoveTask constructor
+         *
+         * @param split split point the move belongs to
+         * @param state packed state after the move
+         * @param depth current depth of the state after the move
+         */
+        MoveTask(SplitPoint split, long state, int depth) {
+            this.split = split;
+            this.state = state;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (split.isAborted()) {
+                return;
+            }
+            float alpha;
+            float beta;
+            synchronized (split) {
+                alpha = split.alpha;
+                beta = split.beta;
+            }
+            float value = iteration(state, depth, alpha, beta, !split.maxPlayer, split);
+            if (!split.isAborted()) {
+                split.update(value, pruning);
+            }
+        }
+    }
+
+    /**
+     * ParallelSearch constructor
+     *
+     * @param pool pool running the search tasks
+     * @param pruning should alpha-beta cutoffs be used
+     * @param budget budget aborting the search, or null
+     */
+    ParallelSearch(ForkJoinPool pool, boolean pruning, SearchBudget budget) {
+        this.pool = pool;
+        this.pruning = pruning;
+        this.budget = budget;
+    }
+
+    /**
+     * Number of nodes visited so far
+     *
+     * @return number of visited search tree nodes
+     */
+    long getNodes() {
+        return nodes.sum();
+    }
+
+    /**
+     * Calculates scores of the first moves in parallel, scores that are lower than the best one
+     * may only be upper bounds of the real scores
+     *
+     * @param state packed state
+     * @param depth the maximal depth of the search tree
+     * @param moves first moves
+     * @param count number of first moves
+     * @return score of each first move
+     */
+    float [] rootValues(long state, int depth, int [] moves, int count) {
+        float [] values = new float [count];
+        AtomicInteger best = new AtomicInteger(Float.floatToIntBits(-1));
+        List<RecursiveAction> tasks = new ArrayList<>(count);
+        for (int k = 0; k < count; k++) {
+            final int index = k;
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    float alpha = 0;
+                    if (pruning) {
+                        // moves scoring below the best one only need an upper bound
+                        alpha = Math.max(0, Math.nextDown(Float.intBitsToFloat(best.get())));
+                    }
+                    long child = PackedState.play(state, MoveGenerator.column(moves[index]),
+                            MoveGenerator.row(moves[index]));
+                    float value = iteration(child, depth - 1, alpha, 1, false, null);
+                    values[index] = value;
+                    int bits = best.get();
+                    while (value > Float.intBitsToFloat(bits) && !best.compareAndSet(bits, Float.floatToIntBits(value))) {
+                        bits = best.get();
+                    }
+                }
+            });
+        }
+        ForkJoinTask<Void> root = pool.submit(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        try {
+            root.get();
+        } catch (InterruptedException e) {
+            // the pool does not see the interrupt of a waiting caller, so the workers are told directly
+            if (budget != null) {
+                budget.cancel();
+            }
+            root.quietlyJoin();
+            Thread.currentThread().interrupt();
+            throw new SearchAborted();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return values;
+    }
+
+    /**
+     * Recursively calculates a score for the moves until the maximal search depth,
+     * splitting the nodes close to the root between the pool threads
+     *
+     * @param state packed state in which next move information is needed
+     * @param depth current depth
+     * @param alpha current minimal guaranteed score that can be achieved from the starting state
+     * @param beta current maximal possible score that can be achieved from the stating state
+     * @param maxPlayer is the player on the move maximizing or minimizing score
+     * @param split closest split point above this node, or null
+     * @return returns the score of starting state, meaningless if the split point has been aborted
+     */
+    private float iteration(long state, int depth, float alpha, float beta, boolean maxPlayer, SplitPoint split) {
+        nodes.increment();
+        if (split != null && split.isAborted()) {
+            return 0;
+        }
+        if (budget != null && depth >= 2) {
+            // nodes close to the leaves are not polled, summing the shared counter is not free
+            budget.check(nodes.sum());
+        }
+        if (PackedState.isFinished(state)) {
+            if (maxPlayer) {
+                return 0;
+            } else {
+                return 1;
+            }
+        }
+
+        float ret = PackedState.heuristic(state);
+
+        if (depth == 0) {
+            // return heuristic value
+            if (maxPlayer) {
+                return ret;
+            } else {
+                // flag to use parents heuristic value
+                return -1;
+            }
+        }
+
+        float bestValue = maxPlayer ? 0 : 1;
+        List<MoveTask> brothers = null;
+        SplitPoint node = null;
+        for (int i = 0; i < PackedState.maxHeaps; i++) {
+            for (int rows = MoveGenerator.legalRows(state, i); rows != 0; rows &= rows - 1) {
+                long child = PackedState.play(state, i, Integer.numberOfTrailingZeros(rows));
+                if (node != null) {
+                    brothers.add(new MoveTask(node, child, depth - 1));
+                    continue;
+                }
+
+                float value = iteration(child, depth - 1, alpha, beta, !maxPlayer, split);
+                if (maxPlayer) {
+                    if (value == -1) {
+                        value = ret;
+                    }
+                    bestValue = Math.max(bestValue, value);
+                    alpha = pruning ? Math.max(alpha, bestValue) : alpha;
+                } else {
+                    bestValue = Math.min(bestValue, value);
+                    beta = pruning ? Math.min(beta, bestValue) : beta;
+                }
+                if (pruning && beta <= alpha) {
+                    return bestValue;
+                }
+                if (depth >= splitDepth) {
+                    // eldest brother searched, remaining moves are searched in parallel
+                    node = new SplitPoint(split, maxPlayer, ret, alpha, beta, bestValue);
+                    brothers = new ArrayList<>();
+                }
+            }
+        }
+
+        if (node == null || brothers.isEmpty()) {
+            return bestValue;
+        }
+        MoveTask.invokeAll(brothers);
+        synchronized (node) {
+            return node.bestValue;
+        }
+    }
+}
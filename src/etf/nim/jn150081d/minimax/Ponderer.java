@@ -0,0 +1,132 @@
+package etf.nim.jn150081d.minimax;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Ponderer searches on the opponent's time
+ *
+ * While the opponent is on the move, the positions after its likely replies are searched one by one
+ * in the background, replies leaving zero nim-sum first since those are the strong ones. When the actual
+ * reply arrives, a finished result is returned immediately, and a search of the reply that is still
+ * running is handed over instead of being started again
+ */
+public final class Ponderer {
+    private final AsyncEngine engine;
+    private final Map<Position, SearchResult> results = new HashMap<>();
+    private int generation;
+    private Position pondered;
+    private CompletableFuture<SearchResult> current;
+
+    /**
+     * Ponderer constructor
+     *
+     * @param engine engine searching both the replies and the actual positions
+     */
+    public Ponderer(AsyncEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Starts searching the positions after the likely replies of the opponent, forgetting earlier results
+     *
+     * @param position position with the opponent on the move
+     * @param limits configuration of the search of each reply
+     */
+    public synchronized void ponder(Position position, SearchLimits limits) {
+        stop();
+        results.clear();
+        ponderNext(generation, likelyReplies(position), 0, limits);
+    }
+
+    /**
+     * Selects a move, reusing the work done while pondering, stops the pondering
+     *
+     * @param position position to be searched, must have at least one valid move
+     * @param limits configuration of the search
+     * @return future completed with the selected move, cancelling it cancels the search
+     */
+    public synchronized CompletableFuture<SearchResult> search(Position position, SearchLimits limits) {
+        generation++;
+        SearchResult result = results.get(position);
+        if (result != null) {
+            stop();
+            return CompletableFuture.completedFuture(result);
+        }
+        if (current != null && !current.isDone() && position.equals(pondered)) {
+            // ponder hit, the running search already has a head start
+            CompletableFuture<SearchResult> hit = current;
+            current = null;
+            return hit;
+        }
+        stop();
+        return engine.search(position, limits);
+    }
+
+    /**
+     * Stops the pondering, results searched so far are kept until the next ponder call
+     */
+    public synchronized void stop() {
+        generation++;
+        if (current != null) {
+            current.cancel(true);
+            current = null;
+        }
+    }
+
+    /**
+     * Starts the search of the next reply, unless the pondering has been stopped in the meantime
+     *
+     * @param ponderGeneration generation of the pondering the reply belongs to
+     * @param replies positions after the likely replies, most likely first
+     * @param index index of the reply to be searched
+     * @param limits configuration of the search of each reply
+     */
+    private synchronized void ponderNext(int ponderGeneration, List<Position> replies, int index, SearchLimits limits) {
+        if (ponderGeneration != generation || index == replies.size()) {
+            return;
+        }
+        Position reply = replies.get(index);
+        pondered = reply;
+        current = engine.search(reply, limits);
+        current.thenAccept(result -> {
+            synchronized (this) {
+                results.put(reply, result);
+            }
+            ponderNext(ponderGeneration, replies, index + 1, limits);
+        });
+    }
+
+    /**
+     * Positions after the replies of the opponent that leave a move to be searched
+     *
+     * @param position position with the opponent on the move
+     * @return positions ordered by likelihood of the reply, none for positions too large to be packed
+     */
+    private static List<Position> likelyReplies(Position position) {
+        if (!position.isSmall()) {
+            return new ArrayList<>();
+        }
+        int [] moves = new int [MoveGenerator.maxMoves];
+        int count = MoveGenerator.generate(position.pack(), moves);
+        List<Position> strong = new ArrayList<>();
+        List<Position> other = new ArrayList<>();
+        for (int k = 0; k < count; k++) {
+            Position reply = position.play(MoveGenerator.column(moves[k]), MoveGenerator.row(moves[k]));
+            long state = reply.pack();
+            if (!MoveGenerator.hasMoves(state)) {
+                continue;
+            }
+            if (PackedState.nimSum(state) == 0) {
+                strong.add(reply);
+            } else {
+                other.add(reply);
+            }
+        }
+        strong.addAll(other);
+        return strong;
+    }
+}
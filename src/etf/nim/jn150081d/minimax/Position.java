@@ -0,0 +1,193 @@
+package etf.nim.jn150081d.minimax;
+
+import java.util.Arrays;
+
+/**
+ * Position is an immutable snapshot of the game state handed to the search engines,
+ * it holds copies of the heap states so it can be safely used outside of the GUI thread
+ *
+ * Positions with up to PackedState.maxHeaps heaps of up to PackedState.maxHeight chips are also packed
+ * into a single long for the fast engines, larger ones are searched as a LargeState
+ */
+public final class Position {
+    private final int [] heaps;
+    private final int prevMove;
+    private final boolean small;
+    private final long packed;
+
+    /**
+     * Position constructor
+     *
+     * @param states states of heaps, only the first numHeaps entries are copied
+     * @param numHeaps number of heaps in the game
+     * @param prevMove number of chips removed by previous player
+     * @throws IllegalArgumentException if a heap state is out of range or two non-empty heaps have the same height
+     */
+    public Position(int [] states, int numHeaps, int prevMove) {
+        if (numHeaps < 1) {
+            throw new IllegalArgumentException("Invalid number of heaps: " + numHeaps);
+        }
+        boolean fits = numHeaps <= PackedState.maxHeaps;
+        for (int i = 0; i < numHeaps; i++) {
+            if (states[i] < 0 || states[i] > LargeState.maxHeight) {
+                throw new IllegalArgumentException("Invalid heap state: " + states[i]);
+            }
+            fits &= states[i] <= PackedState.maxHeight;
+        }
+        if (prevMove < 1) {
+            throw new IllegalArgumentException("Invalid previous move: " + prevMove);
+        }
+        this.heaps = Arrays.copyOf(states, numHeaps);
+        // heaps are packed by height, so two heaps of the same height would merge into one
+        int [] sorted = heaps.clone();
+        Arrays.sort(sorted);
+        for (int i = 1; i < numHeaps; i++) {
+            if (sorted[i] != 0 && sorted[i] == sorted[i - 1]) {
+                throw new IllegalArgumentException("Duplicate heap state: " + sorted[i]);
+            }
+        }
+        this.prevMove = prevMove;
+        this.small = fits;
+        this.packed = fits ? PackedState.pack(heaps, numHeaps, prevMove) : 0;
+    }
+
+    /**
+     * Number of heaps getter
+     *
+     * @return number of heaps
+     */
+    public int getNumHeaps() {
+        return heaps.length;
+    }
+
+    /**
+     * Heap state getter
+     *
+     * @param column index of the heap
+     * @return number of chips on the heap
+     */
+    public int getHeight(int column) {
+        return heaps[column];
+    }
+
+    /**
+     * Previous move getter
+     *
+     * @return number of chips removed by previous player
+     */
+    public int getPrevMove() {
+        return prevMove;
+    }
+
+    /**
+     * Checks if the position fits the packed representation
+     *
+     * @return whether pack can be called
+     */
+    public boolean isSmall() {
+        return small;
+    }
+
+    /**
+     * Returns the position packed for the search engines
+     *
+     * @return packed state
+     * @throws IllegalStateException if the position is too large to be packed
+     */
+    public long pack() {
+        if (!small) {
+            throw new IllegalStateException("Position too large to be packed: " + this);
+        }
+        return packed;
+    }
+
+    /**
+     * Finds the heap with the given non-zero height, heights of non-empty heaps are always distinct
+     *
+     * @param height number of chips
+     * @return index of the heap, or -1 if there is no such heap
+     */
+    public int column(int height) {
+        for (int i = 0; i < heaps.length; i++) {
+            if (heaps[i] == height) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if there are no more chips on the heaps
+     *
+     * @return whether game is finished
+     */
+    public boolean isFinished() {
+        if (small) {
+            return PackedState.isFinished(packed);
+        }
+        for (int height : heaps) {
+            if (height != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if desired move is valid in this position
+     *
+     * @param column column of the selected chip
+     * @param row row of the selected chip
+     * @return whether the desired move is valid
+     */
+    public boolean isMoveValid(int column, int row) {
+        if (column < 0 || column >= heaps.length) {
+            return false;
+        }
+        if (small) {
+            return MoveGenerator.isLegal(packed, column, row);
+        }
+        if (row < 0 || row >= heaps[column] || heaps[column] - row > 2L * prevMove) {
+            return false;
+        }
+        return row == 0 || column(row) == -1;
+    }
+
+    /**
+     * Generates position after the given move
+     *
+     * @param column column of the selected chip
+     * @param row row of the selected chip
+     * @return new position
+     */
+    public Position play(int column, int row) {
+        if (!isMoveValid(column, row)) {
+            throw new IllegalArgumentException("Invalid move: " + column + ", " + row);
+        }
+        int [] states = heaps.clone();
+        states[column] = row;
+        return new Position(states, states.length, heaps[column] - row);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Position)) {
+            return false;
+        }
+        Position other = (Position) o;
+        return prevMove == other.prevMove && Arrays.equals(heaps, other.heaps);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(heaps) + prevMove;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(heaps) + " prevMove=" + prevMove;
+    }
+}
@@ -0,0 +1,62 @@
+package etf.nim.jn150081d.minimax;
+
+/**
+ * PositionIndex ranks positions to dense integers, usable directly as array offsets
+ *
+ * Non-zero heights are distinct, so the sorted heights of a position form a subset of 1 - maxHeight
+ * and the occupied heights bitmask kept by PackedState is already its combinatorial rank among
+ * all subsets. Previous moves of at least half of the maximal height do not restrict any move,
+ * so they share the last bucket. Both parts are maintained by PackedState.play, so ranking a child
+ * costs a few bit operations and no sorting, hashing or allocation
+ */
+public final class PositionIndex {
+    public static final int heightSets = 1 << PackedState.maxHeight;
+    public static final int buckets = (PackedState.maxHeight + 1) / 2;
+    public static final int size = heightSets * buckets;
+
+    /**
+     * Static helper class, not to be instantiated
+     */
+    private PositionIndex() {}
+
+    /**
+     * Rank of the position
+     *
+     * @param state packed state
+     * @return index in range [0, size)
+     */
+    public static int rank(long state) {
+        return rank(heightSet(state), PackedState.prevMove(state));
+    }
+
+    /**
+     * Rank of the position given its heights set and the previous move
+     *
+     * @param heights bitmask with bit h - 1 set when some heap has height h
+     * @param prevMove number of chips removed by previous player
+     * @return index in range [0, size)
+     */
+    public static int rank(int heights, int prevMove) {
+        return heights * buckets + bucket(prevMove);
+    }
+
+    /**
+     * Rank of the sorted heights of the position, regardless of the previous move
+     *
+     * @param state packed state
+     * @return bitmask with bit h - 1 set when some heap has height h, in range [0, heightSets)
+     */
+    public static int heightSet(long state) {
+        return PackedState.occupied(state) >>> 1;
+    }
+
+    /**
+     * Bucket of the previous move
+     *
+     * @param prevMove number of chips removed by previous player
+     * @return bucket in range [0, buckets)
+     */
+    public static int bucket(int prevMove) {
+        return Math.min(prevMove, buckets) - 1;
+    }
+}
@@ -1,160 +1,338 @@
 package etf.nim.jn150081d.minimax;
 
-import etf.nim.jn150081d.GamePanel;
-import etf.nim.jn150081d.MainFrame;
-
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ProAI is tweaked AlphaBeta for stronger AI
+ *
+ * With more than one thread the search is Lazy SMP: helper searches of the same root position run
+ * alongside the main search, every other helper one ply deeper and each with a different move order,
+ * all of them recording to the same transposition table. Helpers only fill the table with results
+ * the main search can reuse, the selected move is always the one of the main search
+ *
+ * Helpers of all engines share one pool with a thread per processor, helpers still waiting for
+ * a thread when the main search finishes are dropped
  */
 public class ProAI extends Minimax {
 
+    private static final long minPlayerKey = 0x5DEECE66DL;
+    private static final int helperThreads = Runtime.getRuntime().availableProcessors();
+    private static final ThreadPoolExecutor helperPool = new ThreadPoolExecutor(helperThreads, helperThreads,
+            0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+        Thread thread = new Thread(runnable, "ProAI helper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Tablebase tablebase;
+    private final TranspositionTable table;
+    private final int threads;
+    private final MoveOrdering ordering = new MoveOrdering();
+    private int [][] moveBuffers;
+    private int rootDepth;
+    private ProAI [] helpers;
+    private int rotation;
+    private volatile boolean stopped;
+    private long tableHits;
+    private long tableMisses;
+    private long flushedCutoffs;
+    private long flushedHits;
+    private long flushedMisses;
+
     /**
-     * Entry struct for hash map of recorded states
+     * ProAI constructor, positions are always searched and recorded to the shared transposition table
      */
-    public class StateEntry {
-        int [] columnPerLastMove = new int [mainFrame.getMaxHeaps() / 2 + 1];
-        int [] rowPerLastMove = new int [mainFrame.getMaxHeaps() / 2 + 1];
-        float [] scorePerLastMove = new float [mainFrame.getMaxHeaps() / 2 + 1];
-        StateEntry() {
-            for (int i = 0; i < mainFrame.getMaxHeaps() / 2 + 1; i++) {
-                columnPerLastMove[i] =  -1;
-                rowPerLastMove[i] = -1;
-                scorePerLastMove[i] = -1.0f;
-            }
-        }
+    public ProAI() {
+        this(null);
+    }
+
+    /**
+     * ProAI constructor, visited states are recorded to the shared transposition table
+     *
+     * @param tablebase solved positions used instead of the search, or null to always search
+     */
+    public ProAI(Tablebase tablebase) {
+        this(tablebase, TranspositionTable.getDefault());
     }
-    private static HashMap<String, StateEntry> hashedStates = new HashMap<>();
 
     /**
      * ProAI constructor
      *
-     * @param mainFrame assigned mainFrame
-     * @param gamePanel assigned gamePanel
-     * @param callMakeMove should this AI call makeMove method or not
-     * @param prevMove number of chips removed by previous player
-     * @param depth the maximal depth of the search tree
+     * @param tablebase solved positions used instead of the search, or null to always search
+     * @param table transposition table for recorded states, may be shared with other engines
      */
-    public ProAI(MainFrame mainFrame, GamePanel gamePanel, boolean callMakeMove, int prevMove, int depth) {
-        super(mainFrame, gamePanel, callMakeMove, prevMove, depth);
+    public ProAI(Tablebase tablebase, TranspositionTable table) {
+        this(tablebase, table, 1);
     }
 
     /**
-     * Returns the array of indexes of values in the state array that form a sorted array in descending order
-     * @param state initial state
-     * @param size length of relevant array entries
-     * @return array of indexes
+     * ProAI constructor
+     *
+     * @param tablebase solved positions used instead of the search, or null to always search
+     * @param table transposition table for recorded states, may be shared with other engines
+     * @param threads number of threads searching each position, including the calling thread
      */
-    private int [] indexState(int[] state, int size) {
-        int [] index = new int [size];
-        ArrayList<Integer> availableIndex = new ArrayList<>();
-        for (int i = 0; i < size; i++) availableIndex.add(i);
-
-        for (int i = 0; i < size; i++) {
-            int maxInd = -1;
-            for (int j = 0; j < availableIndex.size(); j++) {
-                if (maxInd == -1 || state[availableIndex.get(j)] > state[availableIndex.get(maxInd)]) {
-                    maxInd = j;
-                }
-            }
-            Integer rem = availableIndex.get(maxInd);
-            availableIndex.remove(rem);
-            index[i] = rem;
+    public ProAI(Tablebase tablebase, TranspositionTable table, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
         }
-        return index;
+        this.tablebase = tablebase;
+        this.table = table;
+        this.threads = threads;
     }
 
     /**
-     * Takes initial state and array of indexes and returns a string representing sorted state array
-     * @param state initial state
-     * @param index index array
-     * @return generated string
+     * Answers from the tablebase if one is available, otherwise
+     * checks if initial state is already visited, if not
+     * calculates a score for each possible move
+     *
+     * @param position position to be searched, must have at least one valid move
+     * @param limits configuration of the search
+     * @return selected move
      */
-    private String normState(int[] state, int[] index) {
-        StringBuilder norm = new StringBuilder();
-        for (int ind : index) {
-            norm.append(Integer.toHexString(state[ind]));
+    @Override
+    public SearchResult search(Position position, SearchLimits limits) {
+        long state = position.pack();
+        if (!MoveGenerator.hasMoves(state)) {
+            throw new IllegalArgumentException("No valid moves in position " + position);
         }
-        while (norm.length() < mainFrame.getMaxHeaps()) {
-            norm.append("0");
+        depthReached = 0;
+        resetCounters();
+        long startTime = System.nanoTime();
+
+        boolean finished = false;
+        try {
+            SearchResult result;
+            if (tablebase != null) {
+                int move = tablebase.bestMove(state);
+                result = new SearchResult(MoveGenerator.column(move), MoveGenerator.row(move),
+                        tablebase.isWin(state) ? 1 : 0, nodes);
+            } else {
+                table.newSearch();
+                result = threads > 1 ? lazySmp(state, limits) : searchRoot(state, limits);
+            }
+            finished = true;
+            return result;
+        } finally {
+            publishMetrics(finished, startTime);
         }
-        return norm.toString();
     }
 
+    /**
+     * Starts counting the nodes, probes and cutoffs of a new search from zero
+     */
+    private void resetCounters() {
+        nodes = 0;
+        flushedNodes = 0;
+        tableHits = 0;
+        tableMisses = 0;
+        flushedHits = 0;
+        flushedMisses = 0;
+        flushedCutoffs = ordering.getCutoffs();
+    }
 
     /**
-     * Checks if initial state is already visited, if not
-     * calculates a score for each possible move,
-     * calls makeMove is needed
+     * Adds the nodes, the cutoffs and the table probes since the last call to the metrics of the engine class,
+     * helpers add their own to the metrics of the engine that runs them
      */
     @Override
-    public void run() {
-        moveStart();
+    void flushMetrics() {
+        long cutoffs = ordering.getCutoffs();
+        metrics.addCutoffs(cutoffs - flushedCutoffs);
+        flushedCutoffs = cutoffs;
+        metrics.addTableProbes(tableHits - flushedHits, tableMisses - flushedMisses, table);
+        flushedHits = tableHits;
+        flushedMisses = tableMisses;
+        super.flushMetrics();
+    }
 
-        ArrayList<Integer> bestMoveColumns = new ArrayList<>();
-        ArrayList<Integer> bestMoveRows = new ArrayList<>();
+    /**
+     * Runs the main search on the calling thread while the helpers search the same position
+     *
+     * @param state packed state
+     * @param limits configuration of the main search
+     * @return move selected by the main search, with nodes of all searches
+     */
+    private SearchResult lazySmp(long state, SearchLimits limits) {
+        if (helpers == null) {
+            helpers = new ProAI [threads - 1];
+            for (int k = 0; k < helpers.length; k++) {
+                helpers[k] = new ProAI(null, table);
+                helpers[k].rotation = k + 1;
+                helpers[k].metrics = metrics;
+            }
+        }
 
-        int [] index = indexState(mainFrame.heapStates, mainFrame.heapsCo());
-        String norm = normState(mainFrame.heapStates, index);
-        StateEntry selState = hashedStates.get(norm);
-        int prevMoveAsIndex = (prevMove <= mainFrame.getMaxHeaps() / 2) ? (prevMove - 1) : (mainFrame.getMaxHeaps() / 2);
-        float bestMoveValue = -1;
+        List<FutureTask<Void>> running = new ArrayList<>(helpers.length);
+        for (int k = 0; k < helpers.length; k++) {
+            ProAI helper = helpers[k];
+            int helperDepth = limits.getDepth() + (k & 1);
+            // helpers dropped before they start report no nodes or probes
+            helper.stopped = false;
+            helper.resetCounters();
+            FutureTask<Void> task = new FutureTask<>(() -> helper.helperSearch(state, helperDepth), null);
+            running.add(task);
+            helperPool.execute(task);
+        }
 
-        if (selState != null && selState.columnPerLastMove[prevMoveAsIndex] != -1) {
-            bestMoveColumns.add(index[selState.columnPerLastMove[prevMoveAsIndex]]);
-            bestMoveRows.add(selState.rowPerLastMove[prevMoveAsIndex]);
-        } else {
-            MinimaxNode node = new MinimaxNode(mainFrame.heapStates.clone(), prevMove);
-
-            // iterate through first possible moves
-            for (int i = 0; i < mainFrame.heapsCo(); i++) {
-                for (int j = 0; j < mainFrame.heapStates[i]; j++) {
-                    if (gamePanel.isMoveValid(i, j, node.state, node.prevMove)) {
-                        MinimaxNode newNode = new MinimaxNode(node.state.clone(), node.state[i] - j);
-                        newNode.state[i] = j;
-                        float move = iteration(newNode, depth - 1, 0, 1, false);
-                        if (move > bestMoveValue) {
-                            bestMoveColumns.clear();
-                            bestMoveRows.clear();
-                        }
-                        if (move >= bestMoveValue) {
-                            bestMoveColumns.add(i);
-                            bestMoveRows.add(j);
-                            bestMoveValue = move;
-                        }
+        SearchResult result;
+        Throwable failure = null;
+        try {
+            result = searchRoot(state, limits);
+        } finally {
+            for (ProAI helper : helpers) {
+                helper.stopped = true;
+            }
+            // the helpers are reused by the next search, so they are awaited even if the search is cancelled
+            boolean interrupted = Thread.interrupted();
+            for (FutureTask<Void> task : running) {
+                if (helperPool.remove(task)) {
+                    // never started, the table is only filled by running helpers
+                    continue;
+                }
+                while (true) {
+                    try {
+                        task.get();
+                        break;
+                    } catch (ExecutionException e) {
+                        failure = e.getCause();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
                     }
                 }
             }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            // the rest of the counters since the last poll of each helper
+            for (ProAI helper : helpers) {
+                helper.flushMetrics();
+            }
         }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new IllegalStateException(failure);
+        }
+
+        long totalNodes = result.getNodes();
+        for (ProAI helper : helpers) {
+            totalNodes += helper.nodes;
+        }
+        return new SearchResult(result.getColumn(), result.getRow(), result.getScore(), totalNodes);
+    }
+
+    /**
+     * Deepens the search of the position until it is solved or the main search stops the helper
+     *
+     * @param state packed state
+     * @param depth the maximal depth of the search tree
+     */
+    private void helperSearch(long state, int depth) {
+        try {
+            searchRoot(state, new SearchLimits(depth, 0, 0));
+        } catch (SearchAborted e) {
+            // main search is finished, unfinished results are never recorded
+        }
+    }
 
-        moveEnd();
+    /**
+     * Checks if initial state is already visited, if not
+     * calculates a score for each possible move
+     *
+     * @param state packed state, must have at least one valid move
+     * @param limits configuration of the search
+     * @return selected move
+     */
+    private SearchResult searchRoot(long state, SearchLimits limits) {
+        long entry = table.probe(key(state, true));
+        if (entry != 0) tableHits++;
+        else tableMisses++;
+        if (entry != 0 && isProven(entry)) {
+            int move = TranspositionTable.move(entry);
+            return new SearchResult(PackedState.column(state, moveHeight(move)), moveRow(move),
+                    TranspositionTable.score(entry), nodes);
+        }
 
-        int id = (int) (Math.random() * bestMoveColumns.size());
-        selectedColumn = bestMoveColumns.get(id);
-        selectedRow = bestMoveRows.get(id);
+        int [] moves = new int [MoveGenerator.maxMoves];
+        int count = MoveGenerator.generate(state, moves);
+        SearchResult result = deepen(state, moves, count, limits);
 
         // record new state
-        if (selState == null || selState.columnPerLastMove[prevMoveAsIndex] == -1) {
-            if (selState == null) {
-                selState = new StateEntry();
-                hashedStates.put(norm, selState);
-            }
-            if (bestMoveValue == 0 || bestMoveValue == 1) {
-                int columnInd = 0;
-                while (index[columnInd] != selectedColumn) columnInd++;
-                selState.columnPerLastMove[prevMoveAsIndex] = columnInd;
-                selState.rowPerLastMove[prevMoveAsIndex] = selectedRow;
-                selState.scorePerLastMove[prevMoveAsIndex] = bestMoveValue;
-            }
+        float score = result.getScore();
+        if (entry == 0 && (score == 0 || score == 1)) {
+            int move = tableMove(PackedState.height(state, result.getColumn()), result.getRow());
+            storeProven(state, move, score, true);
         }
+        return result;
+    }
 
-        if (callMakeMove) {
-            gamePanel.makeMove(bestMoveColumns.get(id), bestMoveRows.get(id));
+    /**
+     * Move ordering getter, its statistics cover the main searches of this engine
+     *
+     * @return move ordering of the main search
+     */
+    public MoveOrdering getMoveOrdering() {
+        return ordering;
+    }
+
+    /**
+     * Prepares the move buffers and the move ordering for the search
+     *
+     * @param limits configuration of the search
+     */
+    @Override
+    void startSearch(SearchLimits limits) {
+        if (moveBuffers == null || moveBuffers.length < limits.getDepth()) {
+            moveBuffers = new int [limits.getDepth()][MoveGenerator.maxMoves];
+        }
+        ordering.newSearch(limits.getDepth());
+    }
+
+    /**
+     * Calculates scores of the first moves, scores that are lower than the best one
+     * may only be upper bounds of the real scores
+     *
+     * @param state packed state
+     * @param depth the maximal depth of the search tree
+     * @param moves first moves
+     * @param count number of first moves
+     * @return score of each first move
+     */
+    @Override
+    float [] rootValues(long state, int depth, int [] moves, int count) {
+        float [] values = new float [count];
+        float bestMoveValue = -1;
+        for (int k = 0; k < count; k++) {
+            float alpha = Math.max(0, Math.nextDown(bestMoveValue));
+            long child = PackedState.play(state, MoveGenerator.column(moves[k]), MoveGenerator.row(moves[k]));
+            values[k] = rootIteration(child, depth, alpha, 1);
+            bestMoveValue = Math.max(bestMoveValue, values[k]);
         }
+        return values;
     }
 
+    /**
+     * Searches the state reached by one of the first moves within the given window, the score is
+     * a lower bound if it is not below beta and an upper bound if it is not above alpha
+     *
+     * @param state packed state after the first move
+     * @param depth the maximal depth of the search tree
+     * @param alpha minimal score of interest
+     * @param beta maximal score of interest
+     * @return score of the first move, or its bound
+     */
+    float rootIteration(long state, int depth, float alpha, float beta) {
+        rootDepth = depth;
+        return iteration(state, depth - 1, alpha, beta, false);
+    }
 
     /**
      * Recursively calculates a score for some of the moves until the maximal search depth, or until
@@ -163,39 +341,45 @@ public class ProAI extends Minimax {
      * Some moves can be proved not to be able to produce better results than already achieved,
      * so they can be skipped and we can still be sure that we will get to the best possible move
      *
-     * Records all visited states and remembers potential move that guarantees victory, so that data
-     * can later be used to enhance play strength and performance
+     * Records every searched state with the depth of the search and whether the score is exact or only
+     * a lower or an upper bound, recorded bounds narrow the window of later searches of the same state
+     * and the recorded best move is tried first, the other moves are ordered by MoveOrdering
      *
-     * @param node state in which next move information is needed
+     * @param state packed state in which next move information is needed
      * @param depth current depth
      * @param alpha current minimal guaranteed score that can be achieved from the starting state
      * @param beta current maximal possible score that can be achieved from the stating state
      * @param maxPlayer is the player on the move maximizing or minimizing score
      * @return returns the score of starting state
      */
-    private float iteration(MinimaxNode node, int depth, float alpha, float beta, boolean maxPlayer) {
-        if (gamePanel.isGameFinished(node.state, mainFrame.heapsCo())) {
+    private float iteration(long state, int depth, float alpha, float beta, boolean maxPlayer) {
+        nodes++;
+        if (stopped) throw new SearchAborted();
+        if (budget != null) budget.poll(nodes);
+        if (PackedState.isFinished(state)) {
             if (maxPlayer) return 0;
             else return 1;
         }
 
-        int [] index = indexState(node.state, mainFrame.heapsCo());
-        String norm = normState(node.state, index);
-        StateEntry selState = hashedStates.get(norm);
-        int prevMoveAsIndex = (node.prevMove <= mainFrame.getMaxHeaps() / 2) ? (node.prevMove - 1) : (mainFrame.getMaxHeaps() / 2);
-        float bestMoveValue;
-        int bestColumn = -1;
-        int bestRow = -1;
-
-        if (selState != null && selState.columnPerLastMove[prevMoveAsIndex] != -1) {
-            if (maxPlayer) return selState.scorePerLastMove[prevMoveAsIndex];
-            else return 1 - selState.scorePerLastMove[prevMoveAsIndex];
+        long key = key(state, maxPlayer);
+        long entry = table.probe(key);
+        int hashMove = TranspositionTable.noMove;
+        if (entry == 0) {
+            tableMisses++;
+        } else {
+            tableHits++;
+            float score = TranspositionTable.score(entry);
+            if (TranspositionTable.depth(entry) >= depth) {
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.exact) return score;
+                else if (bound == TranspositionTable.lowerBound) alpha = Math.max(alpha, score);
+                else beta = Math.min(beta, score);
+                if (beta <= alpha) return score;
+            }
+            hashMove = TranspositionTable.move(entry);
         }
 
-        int heuristic = node.state[0];
-        for (int i = 1; i < mainFrame.heapsCo(); i++) heuristic ^= node.state[i]; // xor
-        float ret = 0.5f;
-        if (heuristic == 0) ret = 0.8f;
+        float ret = PackedState.heuristic(state);
 
         if (depth == 0) {
             // return heuristic value
@@ -203,66 +387,180 @@ public class ProAI extends Minimax {
             else return -1; // flag to use parents heuristic value
         }
 
+        int [] moves = moveBuffers[depth];
+        int count = MoveGenerator.generate(state, moves);
+        if (rotation != 0 && count > 1) {
+            rotate(moves, count, rotation % count);
+        }
+        int ply = rootDepth - depth;
+        ordering.order(state, moves, count, ply, generatorMove(state, hashMove));
+
+        float alphaOrig = alpha;
+        float betaOrig = beta;
+        float bestMoveValue;
+        int bestMove = TranspositionTable.noMove;
         if (maxPlayer) {
             // find best next move
             bestMoveValue = 0;
-            boolean terminated = false;
-            for (int i = 0; i < mainFrame.heapsCo() && !terminated; i++) {
-                for (int j = 0; j < node.state[i] && !terminated; j++) {
-                    if (gamePanel.isMoveValid(i, j, node.state, node.prevMove)) {
-                        MinimaxNode newNode = new MinimaxNode(node.state.clone(), node.state[i] - j);
-                        newNode.state[i] = j;
-                        float value = iteration(newNode, depth - 1, alpha, beta, false);
-                        if (value == -1) value = ret;
-                        //bestMoveValue = Math.max(bestMoveValue, value);
-                        if (value >= bestMoveValue) {
-                            bestMoveValue = value;
-                            bestColumn = i;
-                            bestRow = j;
-                        }
-                        alpha = Math.max(alpha, bestMoveValue);
-                        if (beta <= alpha) terminated = true;
-                    }
+            for (int k = 0; k < count && beta > alpha; k++) {
+                int column = MoveGenerator.column(moves[k]);
+                int row = MoveGenerator.row(moves[k]);
+                float value = iteration(PackedState.play(state, column, row), depth - 1, alpha, beta, false);
+                if (value == -1) value = ret;
+                if (value >= bestMoveValue) {
+                    bestMoveValue = value;
+                    bestMove = moves[k];
+                }
+                alpha = Math.max(alpha, bestMoveValue);
+                if (beta <= alpha) {
+                    ordering.cutoff(state, moves[k], ply, depth, k == 0);
                 }
             }
         } else {
             // find worst next move
             bestMoveValue = 1;
-            boolean terminated = false;
-            for (int i = 0; i < mainFrame.heapsCo() && !terminated; i++) {
-                for (int j = 0; j < node.state[i] && !terminated; j++) {
-                    if (gamePanel.isMoveValid(i, j, node.state, node.prevMove)) {
-                        MinimaxNode newNode = new MinimaxNode(node.state.clone(), node.state[i] - j);
-                        newNode.state[i] = j;
-                        float value = iteration(newNode, depth - 1, alpha, beta, true);
-                        //bestMoveValue = Math.min(bestMoveValue, value);
-                        if (value <= bestMoveValue) {
-                            bestMoveValue = value;
-                            bestColumn = i;
-                            bestRow = j;
-                        }
-                        beta = Math.min(beta, bestMoveValue);
-                        if (beta <= alpha) terminated = true;
-                    }
+            for (int k = 0; k < count && beta > alpha; k++) {
+                int column = MoveGenerator.column(moves[k]);
+                int row = MoveGenerator.row(moves[k]);
+                float value = iteration(PackedState.play(state, column, row), depth - 1, alpha, beta, true);
+                if (value <= bestMoveValue) {
+                    bestMoveValue = value;
+                    bestMove = moves[k];
+                }
+                beta = Math.min(beta, bestMoveValue);
+                if (beta <= alpha) {
+                    ordering.cutoff(state, moves[k], ply, depth, k == 0);
                 }
             }
         }
 
         // record new state
-        if (selState == null || selState.columnPerLastMove[prevMoveAsIndex] == -1) {
-            if (selState == null) {
-                selState = new StateEntry();
-                hashedStates.put(norm, selState);
-            }
-            if (bestMoveValue == 0 || bestMoveValue == 1) {
-                int columnInd = 0;
-                while (columnInd < index.length && index[columnInd] != bestColumn) columnInd++;
-                selState.columnPerLastMove[prevMoveAsIndex] = columnInd;
-                selState.rowPerLastMove[prevMoveAsIndex] = bestRow;
-                if (maxPlayer) selState.scorePerLastMove[prevMoveAsIndex] = bestMoveValue;
-                else selState.scorePerLastMove[prevMoveAsIndex] = 1 - bestMoveValue;
-            }
+        int move = tableMove(PackedState.height(state, MoveGenerator.column(bestMove)), MoveGenerator.row(bestMove));
+        if (bestMoveValue == 0 || bestMoveValue == 1) {
+            storeProven(state, move, bestMoveValue, maxPlayer);
+        } else if (bestMoveValue <= alphaOrig) {
+            table.store(key, TranspositionTable.noMove, bestMoveValue, depth, TranspositionTable.upperBound);
+        } else if (bestMoveValue >= betaOrig) {
+            table.store(key, move, bestMoveValue, depth, TranspositionTable.lowerBound);
+        } else {
+            table.store(key, move, bestMoveValue, depth, TranspositionTable.exact);
         }
         return bestMoveValue;
     }
+
+    /**
+     * Decodes the recorded best move for the move generator
+     *
+     * @param state packed state
+     * @param hashMove recorded move encoded for the transposition table, or noMove
+     * @return move encoded as returned by MoveGenerator, or -1 if there is no such move in the state
+     */
+    private static int generatorMove(long state, int hashMove) {
+        if (hashMove == TranspositionTable.noMove) {
+            return -1;
+        }
+        int column = PackedState.column(state, moveHeight(hashMove));
+        if (column == -1) {
+            return -1;
+        }
+        return MoveGenerator.move(column, moveRow(hashMove));
+    }
+
+    /**
+     * Rotates the move list to the left, so that helpers start with different moves
+     *
+     * @param moves generated moves
+     * @param count number of generated moves
+     * @param by number of positions to rotate by
+     */
+    private static void rotate(int [] moves, int count, int by) {
+        reverse(moves, 0, by);
+        reverse(moves, by, count);
+        reverse(moves, 0, count);
+    }
+
+    /**
+     * Reverses a part of the move list
+     *
+     * @param moves generated moves
+     * @param from first index of the part
+     * @param to index after the last one of the part
+     */
+    private static void reverse(int [] moves, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int move = moves[i];
+            moves[i] = moves[j];
+            moves[j] = move;
+        }
+    }
+
+    /**
+     * Records a won or lost state for both players, proven scores do not depend on the
+     * search depth or on which player is maximizing
+     *
+     * @param state packed state
+     * @param move selected move encoded for the transposition table
+     * @param score 0 or 1, score of the state for the maximizing player
+     * @param maxPlayer is the player on the move maximizing or minimizing score
+     */
+    private void storeProven(long state, int move, float score, boolean maxPlayer) {
+        table.store(key(state, maxPlayer), move, score, TranspositionTable.maxDepth, TranspositionTable.exact);
+        table.store(key(state, !maxPlayer), move, 1 - score, TranspositionTable.maxDepth, TranspositionTable.exact);
+    }
+
+    /**
+     * Checks if the recorded score is a proven win or loss
+     *
+     * @param entry entry data
+     * @return whether the score does not depend on the search depth
+     */
+    private static boolean isProven(long entry) {
+        return TranspositionTable.depth(entry) == TranspositionTable.maxDepth &&
+                TranspositionTable.bound(entry) == TranspositionTable.exact;
+    }
+
+    /**
+     * Transposition table key of the state, heuristic scores differ between the maximizing
+     * and the minimizing player so they are recorded separately
+     *
+     * @param state packed state
+     * @param maxPlayer is the player on the move maximizing or minimizing score
+     * @return key of the state
+     */
+    private static long key(long state, boolean maxPlayer) {
+        long key = TranspositionTable.key(state);
+        return maxPlayer ? key : key ^ minPlayerKey;
+    }
+
+    /**
+     * Encodes a move for the transposition table, the heap is identified by its height
+     * since heap order is not part of the position key
+     *
+     * @param height height of the selected heap
+     * @param row row of the selected chip
+     * @return encoded move
+     */
+    static int tableMove(int height, int row) {
+        return (height << 16) | row;
+    }
+
+    /**
+     * Height of the heap of the move encoded for the transposition table
+     *
+     * @param move encoded move
+     * @return height of the selected heap
+     */
+    static int moveHeight(int move) {
+        return move >>> 16;
+    }
+
+    /**
+     * Row of the move encoded for the transposition table
+     *
+     * @param move encoded move
+     * @return row of the selected chip
+     */
+    static int moveRow(int move) {
+        return move & 0xFFFF;
+    }
 }
@@ -1,60 +1,38 @@
 package etf.nim.jn150081d.minimax;
 
-import etf.nim.jn150081d.GamePanel;
-import etf.nim.jn150081d.MainFrame;
-
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.concurrent.CancellationException;
 
 /**
  * RandomAi represents most basic bot that plays random moves
  */
-public class RandomAi extends AI {
+public class RandomAi implements SearchEngine {
 
     /**
-     * RandomAi constructor
+     * Selects a random valid move
      *
-     * @param mainFrame assigned mainFrame
-     * @param gamePanel assigned gamePanel
-     * @param callMakeMove should this AI call makeMove method or not
-     */
-    public RandomAi(MainFrame mainFrame, GamePanel gamePanel, boolean callMakeMove) {
-        super(mainFrame, gamePanel, callMakeMove);
-    }
-
-    /**
-     * Calculates move and calls makeMove is needed
+     * @param position position to be searched, must have at least one valid move
+     * @param limits configuration of the search, ignored by this bot
+     * @return selected move
      */
     @Override
-    public void run() {
-        moveStart();
-
-        ArrayList<Integer> columns = new ArrayList<>(mainFrame.heapsCo());
-        for (int i = 0; i < mainFrame.heapsCo(); i++) {
-            columns.add(i);
+    public SearchResult search(Position position, SearchLimits limits) {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Search cancelled");
         }
-        Collections.shuffle(columns);
-        for (int i = 0; i < mainFrame.heapsCo(); i++) {
-            int column = columns.get(i);
-
-            ArrayList<Integer> rows = new ArrayList<>(mainFrame.heapStates[column]);
-            for (int j = 0; j < mainFrame.heapStates[column]; j++) {
-                rows.add(j);
-            }
-            Collections.shuffle(rows);
-            for (int j = 0; j < mainFrame.heapStates[column]; j++) {
-                int row = rows.get(j);
-                if (gamePanel.isMoveValid(column, row, mainFrame.heapStates, gamePanel.prevMove)) {
-                    if (callMakeMove) {
-                        gamePanel.makeMove(column, row);
-                    } else {
-                        selectedColumn = column;
-                        selectedRow = row;
-                    }
-                    moveEnd();
-                    return;
-                }
+        if (!position.isSmall()) {
+            int [] moves = LargeState.of(position).moves();
+            if (moves.length == 0) {
+                throw new IllegalArgumentException("No valid moves in position " + position);
             }
+            int move = moves[(int) (Math.random() * moves.length)];
+            return new SearchResult(position.column(LargeState.from(move)), LargeState.to(move), 0, 0);
+        }
+        int [] moves = new int [MoveGenerator.maxMoves];
+        int count = MoveGenerator.generate(position.pack(), moves);
+        if (count == 0) {
+            throw new IllegalArgumentException("No valid moves in position " + position);
         }
+        int move = moves[(int) (Math.random() * count)];
+        return new SearchResult(MoveGenerator.column(move), MoveGenerator.row(move), 0, 0);
     }
 }
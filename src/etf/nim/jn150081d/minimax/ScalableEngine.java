@@ -0,0 +1,38 @@
+package etf.nim.jn150081d.minimax;
+
+/**
+ * ScalableEngine selects the representation by the size of the position
+ *
+ * Positions that fit PackedState are searched by the engine working on packed states, larger ones
+ * by the engine working on LargeState, so any engine can be used on boards of any size
+ *
+ * Only LargeBoardAI searches LargeState, so on a large board every engine wrapped this way plays
+ * Monte Carlo tree search, whatever its own algorithm is
+ */
+public class ScalableEngine implements SearchEngine {
+    private final SearchEngine smallEngine;
+    private final SearchEngine largeEngine;
+
+    /**
+     * ScalableEngine constructor
+     *
+     * @param smallEngine engine searching the positions that fit PackedState
+     * @param largeEngine engine searching the positions that do not
+     */
+    public ScalableEngine(SearchEngine smallEngine, SearchEngine largeEngine) {
+        this.smallEngine = smallEngine;
+        this.largeEngine = largeEngine;
+    }
+
+    /**
+     * Searches the position with the engine of its size
+     *
+     * @param position position to be searched, must have at least one valid move
+     * @param limits configuration of the search
+     * @return selected move
+     */
+    @Override
+    public SearchResult search(Position position, SearchLimits limits) {
+        return position.isSmall() ? smallEngine.search(position, limits) : largeEngine.search(position, limits);
+    }
+}
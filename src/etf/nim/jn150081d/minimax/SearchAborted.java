@@ -0,0 +1,16 @@
+package etf.nim.jn150081d.minimax;
+
+/**
+ * SearchAborted unwinds a search iteration that can not be completed,
+ * nothing is recorded from the aborted nodes
+ */
+final class SearchAborted extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * SearchAborted constructor, no stack trace is filled in since the exception is only used for control flow
+     */
+    SearchAborted() {
+        super(null, null, false, false);
+    }
+}
@@ -0,0 +1,122 @@
+package etf.nim.jn150081d.minimax;
+
+/**
+ * SearchBudget tracks the time and node budget of one search and aborts the running iteration once it is spent
+ *
+ * The search is also aborted as soon as the thread that started it is interrupted, even before the budget
+ * is enforced, so cancelled searches stop promptly on every thread working for them. Whenever the clock
+ * is read the engine is also asked to add its counters to its SearchMetrics
+ */
+final class SearchBudget {
+    private static final int pollMask = 1023;
+
+    private final Thread owner;
+    private final long deadline;
+    private final boolean timed;
+    private final long maxNodes;
+    private final Runnable flush;
+    private volatile boolean enforced;
+    private volatile boolean cancelled;
+    private volatile boolean aborted;
+
+    /**
+     * SearchBudget constructor, the time budget starts running immediately
+     *
+     * @param limits configuration of the search
+     */
+    SearchBudget(SearchLimits limits) {
+        this(limits, null);
+    }
+
+    /**
+     * SearchBudget constructor, the time budget starts running immediately
+     *
+     * @param limits configuration of the search
+     * @param flush adds the counters of the engine to its metrics, or null
+     */
+    SearchBudget(SearchLimits limits, Runnable flush) {
+        this.flush = flush;
+        owner = Thread.currentThread();
+        timed = limits.getTime() > 0;
+        deadline = System.nanoTime() + limits.getTime() * 1000000;
+        maxNodes = limits.getNodes() > 0 ? limits.getNodes() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Starts aborting iterations that exceed the budget, called once a move is available
+     */
+    void enforce() {
+        enforced = true;
+    }
+
+    /**
+     * Cancels the search, for callers that can not rely on the interrupt flag of the thread that started it
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Cheap check called on every node, the clock and the interrupt flag are only read once in a while
+     *
+     * @param nodes number of nodes visited so far
+     * @throws SearchAborted when the search is cancelled or the budget is spent
+     */
+    void poll(long nodes) {
+        if ((nodes & pollMask) == 0) {
+            if (flush != null) {
+                flush.run();
+            }
+            check(nodes);
+        } else if (nodes >= maxNodes) {
+            check(nodes);
+        }
+    }
+
+    /**
+     * Full check, for callers that do not visit nodes one by one
+     *
+     * @param nodes number of nodes visited so far
+     * @throws SearchAborted when the search is cancelled or the budget is spent
+     */
+    void check(long nodes) {
+        if (aborted) {
+            // workers still running after the search has been abandoned
+            throw new SearchAborted();
+        }
+        if (owner.isInterrupted()) {
+            cancelled = true;
+        }
+        if (cancelled || (enforced && (nodes >= maxNodes || isTimeUp()))) {
+            aborted = true;
+            throw new SearchAborted();
+        }
+    }
+
+    /**
+     * Check of the time budget and the cancellation alone, for callers doing long work between counted nodes
+     *
+     * @throws SearchAborted when the search is cancelled or the time is up
+     */
+    void checkTime() {
+        check(0);
+    }
+
+    /**
+     * Checks if the thread that started the search has been interrupted
+     *
+     * @return whether the search is cancelled
+     */
+    boolean isCancelled() {
+        return cancelled || owner.isInterrupted();
+    }
+
+    /**
+     * Checks the wall clock budget
+     *
+     * @return whether the deadline has passed
+     */
+    private boolean isTimeUp() {
+        return timed && System.nanoTime() - deadline >= 0;
+    }
+}
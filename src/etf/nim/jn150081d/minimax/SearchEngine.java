@@ -0,0 +1,20 @@
+package etf.nim.jn150081d.minimax;
+
+/**
+ * SearchEngine is the UI independent interface of all AI algorithms
+ *
+ * A running search is cancelled by interrupting the thread that called it, the search
+ * then stops within milliseconds, its pool workers are released and CancellationException is thrown
+ */
+public interface SearchEngine {
+
+    /**
+     * Selects a move for the player on the move
+     *
+     * @param position position to be searched, must have at least one valid move
+     * @param limits configuration of the search
+     * @return selected move
+     * @throws java.util.concurrent.CancellationException when the calling thread is interrupted during the search
+     */
+    SearchResult search(Position position, SearchLimits limits);
+}
@@ -0,0 +1,91 @@
+package etf.nim.jn150081d.minimax;
+
+/**
+ * SearchLimits is an immutable configuration of a single search
+ *
+ * A search with a time or node budget deepens iteratively up to the maximal depth
+ * and returns the move of the last iteration completed within the budget
+ */
+public final class SearchLimits {
+    private final int depth;
+    private final long time;
+    private final long nodes;
+    private final boolean deepening;
+
+    /**
+     * SearchLimits constructor, the search always completes the given depth
+     *
+     * @param depth the maximal depth of the search tree
+     */
+    public SearchLimits(int depth) {
+        this(depth, 0, 0, false);
+    }
+
+    /**
+     * SearchLimits constructor, the search deepens iteratively until the depth or one of the budgets is reached
+     *
+     * @param depth the maximal depth of the search tree
+     * @param time wall clock budget in milliseconds, or 0 for no limit
+     * @param nodes budget of visited search tree nodes, or 0 for no limit
+     */
+    public SearchLimits(int depth, long time, long nodes) {
+        this(depth, time, nodes, true);
+    }
+
+    /**
+     * SearchLimits constructor
+     *
+     * @param depth the maximal depth of the search tree
+     * @param time wall clock budget in milliseconds, or 0 for no limit
+     * @param nodes budget of visited search tree nodes, or 0 for no limit
+     * @param deepening should the search deepen iteratively
+     */
+    private SearchLimits(int depth, long time, long nodes, boolean deepening) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Invalid search depth: " + depth);
+        }
+        if (time < 0 || nodes < 0) {
+            throw new IllegalArgumentException("Invalid search budget: " + time + " ms, " + nodes + " nodes");
+        }
+        this.depth = depth;
+        this.time = time;
+        this.nodes = nodes;
+        this.deepening = deepening;
+    }
+
+    /**
+     * Depth getter
+     *
+     * @return the maximal depth of the search tree
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Time budget getter
+     *
+     * @return wall clock budget in milliseconds, or 0 for no limit
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Node budget getter
+     *
+     * @return budget of visited search tree nodes, or 0 for no limit
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Checks if the search deepens iteratively
+     *
+     * @return whether the search deepens from depth 1 up to the maximal depth
+     */
+    public boolean isDeepening() {
+        return deepening;
+    }
+}
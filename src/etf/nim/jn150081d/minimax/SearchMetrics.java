@@ -0,0 +1,211 @@
+package etf.nim.jn150081d.minimax;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SearchMetrics collects the counters of all engines of one class and publishes them over JMX
+ *
+ * The search loops only increment plain fields of their own engine, which are added here every time
+ * the search polls its budget, so a JMX client sees a long search progress. The counters are striped
+ * adders, so engines on different threads do not contend, and reading them never stops a search
+ */
+public final class SearchMetrics implements SearchMetricsMXBean {
+    private static final String domain = "etf.nim.jn150081d.minimax";
+    private static final int fillSample = 1000;
+    private static final Map<String, SearchMetrics> engines = new ConcurrentHashMap<>();
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder abortedSearches = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder cutoffs = new LongAdder();
+    private final LongAdder tableHits = new LongAdder();
+    private final LongAdder tableMisses = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+    private volatile long lastNanos;
+    private volatile int lastDepth;
+    private volatile TranspositionTable table;
+
+    /**
+     * SearchMetrics constructor, instances are shared per engine class
+     */
+    private SearchMetrics() {
+    }
+
+    /**
+     * Metrics of the engine class, registered with the platform MBean server on first use
+     *
+     * @param engine simple name of the engine class
+     * @return shared metrics of the engine class
+     */
+    public static SearchMetrics forEngine(String engine) {
+        return engines.computeIfAbsent(engine, name -> {
+            SearchMetrics metrics = new SearchMetrics();
+            try {
+                ObjectName objectName = new ObjectName(domain + ":type=SearchMetrics,engine=" + name);
+                if (!ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+                    ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+                }
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+            return metrics;
+        });
+    }
+
+    /**
+     * Adds a finished search, its nodes are already added
+     *
+     * @param depth depth of the last completed iteration, or 0 if the move came from a table
+     * @param nanos wall time of the search in nanoseconds
+     */
+    void recordSearch(int depth, long nanos) {
+        searches.increment();
+        searchNanos.add(nanos);
+        busyNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        maxDepth.accumulate(depth);
+        lastNanos = nanos;
+        lastDepth = depth;
+    }
+
+    /**
+     * Adds a search that was cancelled or failed, its nodes are already added
+     *
+     * @param nanos wall time of the search in nanoseconds
+     */
+    void recordAborted(long nanos) {
+        abortedSearches.increment();
+        busyNanos.add(nanos);
+    }
+
+    /**
+     * Adds the nodes searched since the last call
+     *
+     * @param count number of nodes
+     */
+    void addNodes(long count) {
+        nodes.add(count);
+    }
+
+    /**
+     * Adds the cutoffs of a search
+     *
+     * @param count number of cutoffs
+     */
+    void addCutoffs(long count) {
+        cutoffs.add(count);
+    }
+
+    /**
+     * Adds the transposition table probes of a search made since the last call
+     *
+     * @param hits number of probes finding an entry
+     * @param misses number of probes finding no entry
+     * @param searched table probed by the search
+     */
+    void addTableProbes(long hits, long misses, TranspositionTable searched) {
+        tableHits.add(hits);
+        tableMisses.add(misses);
+        table = searched;
+    }
+
+    @Override
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    @Override
+    public long getAbortedSearches() {
+        return abortedSearches.sum();
+    }
+
+    @Override
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    @Override
+    public double getNodesPerSecond() {
+        long nanos = busyNanos.sum();
+        return nanos == 0 ? 0 : nodes.sum() / (nanos / 1e9);
+    }
+
+    @Override
+    public long getCutoffs() {
+        return cutoffs.sum();
+    }
+
+    @Override
+    public long getTableHits() {
+        return tableHits.sum();
+    }
+
+    @Override
+    public long getTableMisses() {
+        return tableMisses.sum();
+    }
+
+    @Override
+    public double getTableHitRate() {
+        long hits = tableHits.sum();
+        long probes = hits + tableMisses.sum();
+        return probes == 0 ? 0 : (double) hits / probes;
+    }
+
+    @Override
+    public int getTableFillPerMille() {
+        TranspositionTable searched = table;
+        return searched == null ? 0 : searched.fill(fillSample);
+    }
+
+    @Override
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    @Override
+    public int getMaxDepth() {
+        return (int) maxDepth.get();
+    }
+
+    @Override
+    public double getLastMoveTime() {
+        return lastNanos / 1e6;
+    }
+
+    @Override
+    public double getAverageMoveTime() {
+        long count = searches.sum();
+        return count == 0 ? 0 : searchNanos.sum() / 1e6 / count;
+    }
+
+    @Override
+    public double getMaxMoveTime() {
+        return maxNanos.get() / 1e6;
+    }
+
+    @Override
+    public void reset() {
+        searches.reset();
+        abortedSearches.reset();
+        nodes.reset();
+        cutoffs.reset();
+        tableHits.reset();
+        tableMisses.reset();
+        searchNanos.reset();
+        busyNanos.reset();
+        maxNanos.reset();
+        maxDepth.reset();
+        lastNanos = 0;
+        lastDepth = 0;
+    }
+}
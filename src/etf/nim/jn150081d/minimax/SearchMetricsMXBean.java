@@ -0,0 +1,115 @@
+package etf.nim.jn150081d.minimax;
+
+/**
+ * SearchMetricsMXBean is the management interface of the search counters of one engine class,
+ * registered as etf.nim.jn150081d.minimax:type=SearchMetrics,engine=name
+ *
+ * Nodes, cutoffs and table probes are added while the searches run, about every thousand nodes,
+ * and cover cancelled searches as well. Times and depths cover the finished searches
+ */
+public interface SearchMetricsMXBean {
+
+    /**
+     * Number of finished searches
+     *
+     * @return number of searches
+     */
+    long getSearches();
+
+    /**
+     * Number of searches cancelled or failed before selecting a move
+     *
+     * @return number of aborted searches
+     */
+    long getAbortedSearches();
+
+    /**
+     * Number of searched nodes, including the nodes of parallel workers
+     *
+     * @return number of nodes
+     */
+    long getNodes();
+
+    /**
+     * Searched nodes per second of search time, aborted searches included
+     *
+     * @return nodes per second
+     */
+    double getNodesPerSecond();
+
+    /**
+     * Number of nodes where the serial search skipped moves after a cutoff
+     *
+     * @return number of cutoffs
+     */
+    long getCutoffs();
+
+    /**
+     * Number of transposition table probes finding an entry
+     *
+     * @return number of hits
+     */
+    long getTableHits();
+
+    /**
+     * Number of transposition table probes finding no entry
+     *
+     * @return number of misses
+     */
+    long getTableMisses();
+
+    /**
+     * Share of transposition table probes finding an entry
+     *
+     * @return hit rate, or 0 if the table was never probed
+     */
+    double getTableHitRate();
+
+    /**
+     * Occupancy of the transposition table of the last search, sampled from a thousand slots spread
+     * evenly over the whole table
+     *
+     * @return occupied slots per mille, or 0 for engines without a table
+     */
+    int getTableFillPerMille();
+
+    /**
+     * Depth of the last completed iteration of the last search
+     *
+     * @return depth reached, or 0 if the move came from a table
+     */
+    int getLastDepth();
+
+    /**
+     * Highest depth completed by any search
+     *
+     * @return maximal depth reached
+     */
+    int getMaxDepth();
+
+    /**
+     * Wall time of the last search
+     *
+     * @return time in milliseconds
+     */
+    double getLastMoveTime();
+
+    /**
+     * Average wall time of a search
+     *
+     * @return time in milliseconds
+     */
+    double getAverageMoveTime();
+
+    /**
+     * Longest wall time of a search
+     *
+     * @return time in milliseconds
+     */
+    double getMaxMoveTime();
+
+    /**
+     * Resets all counters
+     */
+    void reset();
+}
@@ -0,0 +1,67 @@
+package etf.nim.jn150081d.minimax;
+
+/**
+ * SearchResult holds the move selected by a search engine
+ */
+public final class SearchResult {
+    private final int column;
+    private final int row;
+    private final float score;
+    private final long nodes;
+
+    /**
+     * SearchResult constructor
+     *
+     * @param column column of the selected chip
+     * @param row row of the selected chip
+     * @param score score of the selected move
+     * @param nodes number of visited search tree nodes
+     */
+    public SearchResult(int column, int row, float score, long nodes) {
+        this.column = column;
+        this.row = row;
+        this.score = score;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Selected column getter
+     *
+     * @return column of the selected chip
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Selected row getter
+     *
+     * @return row of the selected chip
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * Score getter
+     *
+     * @return score of the selected move, from the perspective of the player on the move
+     */
+    public float getScore() {
+        return score;
+    }
+
+    /**
+     * Visited nodes getter
+     *
+     * @return number of visited search tree nodes
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + column + ", " + row + ") score=" + score + " nodes=" + nodes;
+    }
+}
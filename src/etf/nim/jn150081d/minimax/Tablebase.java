@@ -0,0 +1,247 @@
+package etf.nim.jn150081d.minimax;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+
+/**
+ * Tablebase holds the solved result of every packed position
+ *
+ * Position value depends only on the set of non-zero heights and on the previous move capped at
+ * half of the maximal height, so there are 2^15 * 8 entries. Each entry is one byte, zero if
+ * the player on the move loses, or (fromHeight << 4) | toHeight of a winning move otherwise
+ *
+ * Stored tables are memory mapped and probed in place, so all engine processes on one machine
+ * share the same pages of the OS page cache and no table data is copied to the heap
+ */
+public final class Tablebase {
+    public static final String defaultPath = "res/nim.tb";
+
+    private static final int magic = 0x4E494D54;
+    private static final int version = 1;
+    private static final int headerSize = 16;
+    private static final int buckets = PositionIndex.buckets;
+    private static final int size = PositionIndex.size;
+
+    private static volatile Tablebase defaultTablebase;
+
+    private final ByteBuffer entries;
+
+    /**
+     * Tablebase constructor
+     *
+     * @param entries solved entries, starting at index 0
+     */
+    private Tablebase(ByteBuffer entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Returns the tablebase stored at the default path, solving and storing it if it does not exist yet
+     *
+     * @return shared tablebase
+     */
+    public static Tablebase getDefault() {
+        Tablebase tablebase = defaultTablebase;
+        if (tablebase == null) {
+            synchronized (Tablebase.class) {
+                tablebase = defaultTablebase;
+                if (tablebase == null) {
+                    tablebase = loadOrGenerate(Paths.get(defaultPath));
+                    defaultTablebase = tablebase;
+                }
+            }
+        }
+        return tablebase;
+    }
+
+    /**
+     * Maps the tablebase file, or solves it and tries to store it if the file is missing or invalid
+     *
+     * @param path path of the tablebase file
+     * @return loaded or generated tablebase
+     */
+    public static Tablebase loadOrGenerate(Path path) {
+        if (Files.exists(path)) {
+            try {
+                return load(path);
+            } catch (IOException e) { e.printStackTrace(); }
+        }
+        Tablebase tablebase = generate();
+        try {
+            tablebase.save(path);
+            return load(path);
+        } catch (IOException e) { e.printStackTrace(); }
+        return tablebase;
+    }
+
+    /**
+     * Maps the tablebase file read only, entries are read directly from the mapped pages
+     *
+     * @param path path of the tablebase file
+     * @return loaded tablebase
+     * @throws IOException when the file can not be mapped or is not a valid tablebase
+     */
+    public static Tablebase load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() != headerSize + size) {
+                throw new IOException("Invalid tablebase size: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            checkHeader(buffer, path);
+            return new Tablebase(buffer.slice());
+        }
+    }
+
+    /**
+     * Stores the tablebase to the file
+     *
+     * @param path path of the tablebase file
+     * @throws IOException when the file can not be written
+     */
+    public void save(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(headerSize + size);
+        buffer.putInt(magic).putInt(version).putInt(PackedState.maxHeight).putInt(buckets);
+        buffer.put(entries.duplicate().clear());
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Solves every position, starting from the empty board and moving up by total number of chips
+     *
+     * Every move removes at least one chip, so all successors of a layer are solved before the layer itself,
+     * and positions inside one layer are independent and solved in parallel
+     *
+     * @return solved tablebase
+     */
+    public static Tablebase generate() {
+        byte [] entries = new byte [size];
+        int maxSum = PackedState.maxHeight * (PackedState.maxHeight + 1) / 2;
+        int [][] layers = new int [maxSum + 1][];
+        int [] layerSizes = new int [maxSum + 1];
+        for (int heights = 0; heights < PositionIndex.heightSets; heights++) {
+            layerSizes[chipSum(heights)]++;
+        }
+        for (int sum = 0; sum <= maxSum; sum++) {
+            layers[sum] = new int [layerSizes[sum]];
+            layerSizes[sum] = 0;
+        }
+        for (int heights = 0; heights < PositionIndex.heightSets; heights++) {
+            int sum = chipSum(heights);
+            layers[sum][layerSizes[sum]++] = heights;
+        }
+
+        for (int [] layer : layers) {
+            IntStream.range(0, layer.length).parallel().forEach(i -> {
+                for (int bucket = 0; bucket < buckets; bucket++) {
+                    entries[PositionIndex.rank(layer[i], bucket + 1)] = solve(entries, layer[i], bucket + 1);
+                }
+            });
+        }
+        return new Tablebase(ByteBuffer.wrap(entries));
+    }
+
+    /**
+     * Checks if the player on the move wins
+     *
+     * @param state packed state
+     * @return whether the position is won for the player on the move
+     */
+    public boolean isWin(long state) {
+        return entries.get(PositionIndex.rank(state)) != 0;
+    }
+
+    /**
+     * Selects a winning move if there is one, or the first valid move of a lost position
+     *
+     * @param state packed state, must have at least one valid move
+     * @return encoded move as returned by MoveGenerator
+     */
+    public int bestMove(long state) {
+        int entry = entries.get(PositionIndex.rank(state)) & 0xFF;
+        if (entry == 0) {
+            for (int i = 0; i < PackedState.maxHeaps; i++) {
+                int rows = MoveGenerator.legalRows(state, i);
+                if (rows != 0) {
+                    return MoveGenerator.move(i, Integer.numberOfTrailingZeros(rows));
+                }
+            }
+            throw new IllegalArgumentException("No valid moves in state " + Long.toHexString(state));
+        }
+        int column = PackedState.column(state, entry >>> 4);
+        if (column != -1) {
+            return MoveGenerator.move(column, entry & 0xF);
+        }
+        throw new IllegalStateException("Inconsistent tablebase entry for state " + Long.toHexString(state));
+    }
+
+    /**
+     * Finds a move to a lost position, all successors have to be solved already
+     *
+     * @param entries partially solved entries
+     * @param heights bitmask with bit h - 1 set when some heap has height h
+     * @param prevMove number of chips removed by previous player
+     * @return entry value of the position
+     */
+    private static byte solve(byte [] entries, int heights, int prevMove) {
+        for (int rest = heights; rest != 0; rest &= rest - 1) {
+            int from = Integer.numberOfTrailingZeros(rest) + 1;
+            for (int to = Math.max(0, from - 2 * prevMove); to < from; to++) {
+                if (to != 0 && (heights & (1 << (to - 1))) != 0) {
+                    continue;
+                }
+                int child = heights & ~(1 << (from - 1));
+                if (to != 0) {
+                    child |= 1 << (to - 1);
+                }
+                if (entries[PositionIndex.rank(child, from - to)] == 0) {
+                    return (byte) ((from << 4) | to);
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Total number of chips in the heights set
+     *
+     * @param heights bitmask with bit h - 1 set when some heap has height h
+     * @return number of chips
+     */
+    private static int chipSum(int heights) {
+        int sum = 0;
+        for (int rest = heights; rest != 0; rest &= rest - 1) {
+            sum += Integer.numberOfTrailingZeros(rest) + 1;
+        }
+        return sum;
+    }
+
+    /**
+     * Validates the file header
+     *
+     * @param buffer buffer positioned at the start of the file
+     * @param path path of the tablebase file, used for error messages
+     * @throws IOException when the header does not match this tablebase format
+     */
+    private static void checkHeader(ByteBuffer buffer, Path path) throws IOException {
+        if (buffer.getInt() != magic || buffer.getInt() != version ||
+                buffer.getInt() != PackedState.maxHeight || buffer.getInt() != buckets) {
+            throw new IOException("Invalid tablebase header: " + path);
+        }
+    }
+}
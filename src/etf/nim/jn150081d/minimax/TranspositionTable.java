@@ -0,0 +1,231 @@
+package etf.nim.jn150081d.minimax;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * TranspositionTable is a fixed size table of search results stored outside of the heap
+ *
+ * Every slot holds two longs, the entry data and the key xor the data. Slots are written and read
+ * without locks, a torn or concurrently replaced slot simply fails the key check and reads as a miss,
+ * so one table can be shared by any number of searches running on different threads.
+ * Slots are grouped in pairs, a new entry replaces the slot holding an entry of an older search
+ * or the one searched to a smaller depth
+ *
+ * Entry data layout: score * scoreScale in bits 0 - 15, depth in bits 16 - 23, bound in bits 24 - 25,
+ * age in bits 26 - 31 and the move in bits 32 - 63
+ */
+public final class TranspositionTable {
+    public static final int exact = 1;
+    public static final int lowerBound = 2;
+    public static final int upperBound = 3;
+    public static final int maxDepth = 255;
+    public static final int noMove = -1;
+
+    private static final String sizeProperty = "nimpro.tt.mb";
+    private static final long defaultMegabytes = 16;
+    private static final int slotBytes = 16;
+    private static final float scoreScale = 10000;
+    private static final int ageMask = 63;
+    private static final VarHandle longs = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static volatile TranspositionTable defaultTable;
+
+    private final ByteBuffer slots;
+    private final int slotMask;
+    private volatile int age;
+
+    /**
+     * TranspositionTable constructor
+     *
+     * @param bytes memory budget, rounded down to a power of two number of slots
+     */
+    public TranspositionTable(long bytes) {
+        long count = Long.highestOneBit(Math.max(bytes / slotBytes, 2));
+        count = Math.min(count, 1L << 26);
+        slots = ByteBuffer.allocateDirect((int) count * slotBytes + Long.BYTES).alignedSlice(Long.BYTES);
+        slotMask = (int) count - 1;
+    }
+
+    /**
+     * Returns the table shared by all engines that are not given their own,
+     * its size in megabytes is read from the nimpro.tt.mb system property
+     *
+     * @return shared table
+     */
+    public static TranspositionTable getDefault() {
+        TranspositionTable table = defaultTable;
+        if (table == null) {
+            synchronized (TranspositionTable.class) {
+                table = defaultTable;
+                if (table == null) {
+                    table = new TranspositionTable(Long.getLong(sizeProperty, defaultMegabytes) << 20);
+                    defaultTable = table;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Key of a packed state, never 0 so that empty slots never match
+     *
+     * @param state packed state
+     * @return key of the position
+     */
+    public static long key(long state) {
+        return (PositionIndex.rank(state) + 1L) * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * Marks the beginning of a new search, entries of previous searches become preferred for replacement
+     */
+    public void newSearch() {
+        age = (age + 1) & ageMask;
+    }
+
+    /**
+     * Finds the entry of the position
+     *
+     * @param key key of the position
+     * @return entry data, or 0 if the position is not in the table
+     */
+    public long probe(long key) {
+        int slot = (int) (key >>> 32) & slotMask & ~1;
+        for (int i = slot; i < slot + 2; i++) {
+            long data = (long) longs.getOpaque(slots, i * slotBytes);
+            long check = (long) longs.getOpaque(slots, i * slotBytes + Long.BYTES);
+            if (data != 0 && (check ^ data) == key) {
+                return data;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Stores the entry of the position
+     *
+     * @param key key of the position
+     * @param move move selected in the position, or noMove
+     * @param score score of the position
+     * @param depth depth of the search that produced the score
+     * @param bound exact, lowerBound or upperBound
+     */
+    public void store(long key, int move, float score, int depth, int bound) {
+        int currentAge = age;
+        long data = (Math.round(score * scoreScale) & 0xFFFFL)
+                | ((long) Math.min(depth, maxDepth) << 16)
+                | ((long) bound << 24)
+                | ((long) currentAge << 26)
+                | ((long) move << 32);
+
+        int slot = (int) (key >>> 32) & slotMask & ~1;
+        int victim = slot;
+        int victimValue = Integer.MAX_VALUE;
+        for (int i = slot; i < slot + 2; i++) {
+            long stored = (long) longs.getOpaque(slots, i * slotBytes);
+            long check = (long) longs.getOpaque(slots, i * slotBytes + Long.BYTES);
+            if (stored == 0 || (check ^ stored) == key) {
+                victim = i;
+                break;
+            }
+            // prefer entries of older searches, then shallower entries
+            int value = (age(stored) == currentAge ? maxDepth + 1 : 0) + depth(stored);
+            if (value < victimValue) {
+                victim = i;
+                victimValue = value;
+            }
+        }
+        longs.setOpaque(slots, victim * slotBytes, data);
+        longs.setOpaque(slots, victim * slotBytes + Long.BYTES, key ^ data);
+    }
+
+    /**
+     * Removes all entries
+     */
+    public void clear() {
+        for (int i = 0; i <= slotMask; i++) {
+            longs.setOpaque(slots, i * slotBytes, 0L);
+            longs.setOpaque(slots, i * slotBytes + Long.BYTES, 0L);
+        }
+    }
+
+    /**
+     * Share of occupied slots among slots spread evenly over the table, entries of earlier searches included
+     *
+     * @param sample number of slots to be checked
+     * @return occupied slots per mille
+     */
+    public int fill(int sample) {
+        int checked = Math.min(sample, slotMask + 1);
+        long stride = (slotMask + 1L) / checked;
+        int occupied = 0;
+        for (int i = 0; i < checked; i++) {
+            if ((long) longs.getOpaque(slots, i * stride * slotBytes) != 0) {
+                occupied++;
+            }
+        }
+        return occupied * 1000 / checked;
+    }
+
+    /**
+     * Number of entries the table can hold
+     *
+     * @return number of slots
+     */
+    public int capacity() {
+        return slotMask + 1;
+    }
+
+    /**
+     * Score of the entry
+     *
+     * @param data entry data
+     * @return stored score
+     */
+    public static float score(long data) {
+        return (short) data / scoreScale;
+    }
+
+    /**
+     * Depth of the entry
+     *
+     * @param data entry data
+     * @return depth of the search that produced the score
+     */
+    public static int depth(long data) {
+        return (int) (data >>> 16) & 0xFF;
+    }
+
+    /**
+     * Bound type of the entry
+     *
+     * @param data entry data
+     * @return exact, lowerBound or upperBound
+     */
+    public static int bound(long data) {
+        return (int) (data >>> 24) & 3;
+    }
+
+    /**
+     * Move of the entry
+     *
+     * @param data entry data
+     * @return stored move, or noMove
+     */
+    public static int move(long data) {
+        return (int) (data >>> 32);
+    }
+
+    /**
+     * Age of the entry
+     *
+     * @param data entry data
+     * @return age of the search that stored the entry
+     */
+    private static int age(long data) {
+        return (int) (data >>> 26) & ageMask;
+    }
+}
@@ -0,0 +1,285 @@
+package etf.nim.jn150081d.tools;
+
+import etf.nim.jn150081d.minimax.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BenchmarkSuite measures the engines and the hot helpers of the minimax package, it needs no display
+ *
+ * Every benchmark runs a few warmup iterations and then measured ones, like JMH does. An engine iteration
+ * searches the whole corpus of positions at one depth with fresh engines and cleared tables, and reports
+ * the time to move, nodes per second and bytes allocated per move. A helper iteration calls the helper
+ * on all states within two plies of the corpus for a fixed time and reports nanoseconds and bytes per call.
+ * Allocation is counted by the JVM for the measuring thread, so engines search on the calling thread
+ *
+ * Usage: BenchmarkSuite [engines|helpers]
+ */
+public class BenchmarkSuite {
+
+    private static final int warmupIterations = 3;
+    private static final int measureIterations = 5;
+    private static final long helperIterationNanos = 200000000L;
+    private static final long tableBytes = 64L << 20;
+    private static final int [] depths = { 4, 6, 8 };
+    private static final int maxMinimaxDepth = 6;
+    private static final String [] engineNames = { "minimax", "alpha-beta", "selective", "mtd(f)", "pro" };
+    private static final int [][] positions = EngineFactory.corpus;
+
+    private static final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final TranspositionTable table = new TranspositionTable(tableBytes);
+    private static long sink;
+
+    /**
+     * Helper called in a loop, its result is consumed so the call can not be optimized away
+     */
+    private interface Helper {
+        /**
+         * Calls the helper on all states of the corpus
+         *
+         * @return any value depending on the results
+         */
+        long run();
+    }
+
+    /**
+     * Runs the benchmarks
+     *
+     * @param args optional group of benchmarks to run
+     */
+    public static void main(String [] args) {
+        String group = args.length > 0 ? args[0] : "all";
+        if (!group.equals("all") && !group.equals("engines") && !group.equals("helpers")) {
+            throw new IllegalArgumentException("Unknown benchmark group: " + group);
+        }
+        if (!group.equals("helpers")) {
+            runEngines();
+        }
+        if (!group.equals("engines")) {
+            runHelpers();
+        }
+        // keeps the consumed results alive
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Runs every engine at every depth over the corpus
+     */
+    private static void runEngines() {
+        System.out.printf("%-12s %5s %12s %12s %14s %14s%n", "engine", "depth", "ms/move", "stddev", "nodes/s", "B/move");
+        for (String name : engineNames) {
+            for (int depth : depths) {
+                if (name.equals("minimax") && depth > maxMinimaxDepth) {
+                    continue;
+                }
+                for (int i = 0; i < warmupIterations; i++) {
+                    engineIteration(name, depth);
+                }
+                double [] times = new double [measureIterations];
+                long nodes = 0;
+                long bytes = 0;
+                long nanos = 0;
+                for (int i = 0; i < measureIterations; i++) {
+                    long [] result = engineIteration(name, depth);
+                    times[i] = result[0] / 1e6 / positions.length;
+                    nanos += result[0];
+                    nodes += result[1];
+                    bytes += result[2];
+                }
+                long moves = (long) measureIterations * positions.length;
+                System.out.printf("%-12s %5d %12.3f %12.3f %14.0f %14d%n", name, depth, mean(times), deviation(times),
+                        nodes / (nanos / 1e9), bytes / moves);
+            }
+        }
+        System.out.println();
+    }
+
+    /**
+     * Searches all positions of the corpus once
+     *
+     * @param name engine name
+     * @param depth search depth
+     * @return time in nanoseconds, number of nodes and allocated bytes
+     */
+    private static long [] engineIteration(String name, int depth) {
+        SearchLimits limits = new SearchLimits(depth);
+        long nanos = 0;
+        long nodes = 0;
+        long bytes = 0;
+        for (int [] heaps : positions) {
+            Position position = EngineFactory.position(heaps);
+            table.clear();
+            SearchEngine engine = EngineFactory.create(name, table);
+            long startBytes = allocatedBytes();
+            long startTime = System.nanoTime();
+            SearchResult result = engine.search(position, limits);
+            nanos += System.nanoTime() - startTime;
+            bytes += allocatedBytes() - startBytes;
+            nodes += result.getNodes();
+            sink += result.getColumn();
+        }
+        return new long [] { nanos, nodes, bytes };
+    }
+
+    /**
+     * Runs every helper on the states around the corpus
+     */
+    private static void runHelpers() {
+        List<Long> reached = new ArrayList<>();
+        int [] moves = new int [MoveGenerator.maxMoves];
+        for (int [] heaps : positions) {
+            long state = PackedState.pack(heaps, heaps.length, heaps.length);
+            reached.add(state);
+            int count = MoveGenerator.generate(state, moves);
+            for (int k = 0; k < count; k++) {
+                long child = PackedState.play(state, MoveGenerator.column(moves[k]), MoveGenerator.row(moves[k]));
+                reached.add(child);
+                int [] replies = new int [MoveGenerator.maxMoves];
+                int replyCount = MoveGenerator.generate(child, replies);
+                for (int r = 0; r < replyCount; r++) {
+                    reached.add(PackedState.play(child, MoveGenerator.column(replies[r]), MoveGenerator.row(replies[r])));
+                }
+            }
+        }
+        long [] states = new long [reached.size()];
+        int [][] heights = new int [states.length][PackedState.maxHeaps];
+        int [] prevMoves = new int [states.length];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = reached.get(i);
+            prevMoves[i] = PackedState.prevMove(states[i]);
+            for (int column = 0; column < PackedState.maxHeaps; column++) {
+                heights[i][column] = PackedState.height(states[i], column);
+            }
+        }
+
+        System.out.printf("%-16s %10s %10s %10s   (%d states)%n", "helper", "ns/call", "stddev", "B/call", states.length);
+        // the move check of the GUI, called with the heap states for every chip
+        helper("isMoveValid", states.length * PackedState.maxHeaps * PackedState.maxHeight, () -> {
+            long valid = 0;
+            for (int i = 0; i < states.length; i++) {
+                for (int column = 0; column < PackedState.maxHeaps; column++) {
+                    for (int row = 0; row < PackedState.maxHeight; row++) {
+                        if (MoveGenerator.isMoveValid(heights[i], PackedState.maxHeaps, prevMoves[i], column, row)) {
+                            valid++;
+                        }
+                    }
+                }
+            }
+            return valid;
+        });
+        helper("rank", states.length, () -> {
+            long sum = 0;
+            for (long state : states) {
+                sum += PositionIndex.rank(state);
+            }
+            return sum;
+        });
+        helper("key", states.length, () -> {
+            long sum = 0;
+            for (long state : states) {
+                sum += TranspositionTable.key(state);
+            }
+            return sum;
+        });
+        helper("heuristic", states.length, () -> {
+            long sum = 0;
+            for (long state : states) {
+                sum += (long) (PackedState.heuristic(state) * 10);
+            }
+            return sum;
+        });
+        helper("generate", states.length, () -> {
+            long sum = 0;
+            for (long state : states) {
+                sum += MoveGenerator.generate(state, moves);
+            }
+            return sum;
+        });
+    }
+
+    /**
+     * Measures one helper
+     *
+     * @param name helper name
+     * @param calls number of helper calls in one run
+     * @param helper loop calling the helper
+     */
+    private static void helper(String name, long calls, Helper helper) {
+        for (int i = 0; i < warmupIterations; i++) {
+            helperIteration(helper);
+        }
+        double [] times = new double [measureIterations];
+        long bytes = 0;
+        long runs = 0;
+        for (int i = 0; i < measureIterations; i++) {
+            long [] result = helperIteration(helper);
+            times[i] = (double) result[0] / (result[1] * calls);
+            runs += result[1];
+            bytes += result[2];
+        }
+        System.out.printf("%-16s %10.2f %10.2f %10.3f%n", name, mean(times), deviation(times),
+                (double) bytes / (runs * calls));
+    }
+
+    /**
+     * Runs the helper loop for the iteration time
+     *
+     * @param helper loop calling the helper
+     * @return time in nanoseconds, number of runs and allocated bytes
+     */
+    private static long [] helperIteration(Helper helper) {
+        long runs = 0;
+        long startBytes = allocatedBytes();
+        long startTime = System.nanoTime();
+        long time;
+        do {
+            sink += helper.run();
+            runs++;
+            time = System.nanoTime() - startTime;
+        } while (time < helperIterationNanos);
+        return new long [] { time, runs, allocatedBytes() - startBytes };
+    }
+
+    /**
+     * Bytes allocated by the calling thread so far
+     *
+     * @return allocated bytes
+     */
+    private static long allocatedBytes() {
+        return threadBean.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Mean of the measurements
+     *
+     * @param values measurements
+     * @return mean
+     */
+    private static double mean(double [] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    /**
+     * Sample standard deviation of the measurements
+     *
+     * @param values measurements
+     * @return standard deviation
+     */
+    private static double deviation(double [] values) {
+        double mean = mean(values);
+        double sum = 0;
+        for (double value : values) {
+            sum += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(sum / Math.max(1, values.length - 1));
+    }
+}
@@ -0,0 +1,72 @@
+package etf.nim.jn150081d.tools;
+
+import etf.nim.jn150081d.minimax.*;
+
+/**
+ * DeepeningCheck compares iteratively deepened searches with searches at a fixed depth
+ *
+ * A deepened search may only stop early once the position is solved, so wherever the fixed depth search
+ * proves a win or a loss the deepened one must reach the same score. Stopping as soon as one first move
+ * is lost would leave won positions with the heuristic score of a shallow iteration and a random move.
+ * Every search starts with an empty table and pro searches without the tablebase
+ *
+ * Usage: DeepeningCheck [depth]
+ */
+public class DeepeningCheck {
+
+    private static final int defaultDepth = 20;
+    private static final int extraDepth = 10;
+    private static final long budgetMillis = 60000;
+    private static final long tableBytes = 64L << 20;
+    private static final String [] engineNames = { "mtd(f)", "pro" };
+
+    /**
+     * Runs the check
+     *
+     * @param args optional depth of the fixed search
+     */
+    public static void main(String [] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : defaultDepth;
+        SearchLimits fixed = new SearchLimits(depth);
+        SearchLimits deepened = new SearchLimits(depth + extraDepth, budgetMillis, 0);
+
+        int differences = 0;
+        System.out.printf("%-34s %-8s %-14s %-14s%n", "position", "engine", "fixed", "deepened");
+        for (int [] heaps : EngineFactory.corpus) {
+            Position position = EngineFactory.position(heaps);
+            for (String name : engineNames) {
+                SearchResult expected = createEngine(name).search(position, fixed);
+                SearchResult result = createEngine(name).search(position, deepened);
+                boolean proven = expected.getScore() == 0 || expected.getScore() == 1;
+                boolean differs = proven && result.getScore() != expected.getScore();
+                if (differs) {
+                    differences++;
+                }
+                System.out.printf("%-34s %-8s %-14s %-14s%s%n", position, name, describe(expected), describe(result),
+                        differs ? "  differs" : "");
+            }
+        }
+        System.out.println();
+        System.out.printf("%d proven scores not reached by the deepened search%n", differences);
+    }
+
+    /**
+     * Creates an engine with an empty table
+     *
+     * @param name engine name
+     * @return search engine
+     */
+    private static SearchEngine createEngine(String name) {
+        return EngineFactory.create(name, new TranspositionTable(tableBytes));
+    }
+
+    /**
+     * Move and score of the result
+     *
+     * @param result result of a search
+     * @return printed result
+     */
+    private static String describe(SearchResult result) {
+        return result.getColumn() + "," + result.getRow() + " " + result.getScore();
+    }
+}
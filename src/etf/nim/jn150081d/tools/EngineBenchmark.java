@@ -0,0 +1,60 @@
+package etf.nim.jn150081d.tools;
+
+import etf.nim.jn150081d.minimax.*;
+
+/**
+ * EngineBenchmark searches the same positions with the alpha-beta, mtd(f) and pro engines
+ * at a fixed depth and prints the nodes and the time of each search
+ *
+ * Engines with a table may prove a position won or lost beyond the depth, since proven scores
+ * of visited states do not depend on the depth, so their scores can differ from alpha-beta
+ *
+ * Usage: EngineBenchmark [depth], every engine starts each position with an empty table
+ * and pro searches without the tablebase, so only the search algorithms are compared
+ */
+public class EngineBenchmark {
+
+    private static final int defaultDepth = 8;
+    private static final long tableBytes = 64L << 20;
+    private static final String [] engineNames = { "alpha-beta", "mtd(f)", "pro" };
+    private static final int [][] positions = EngineFactory.corpus;
+
+    /**
+     * Runs the benchmark
+     *
+     * @param args optional search depth
+     */
+    public static void main(String [] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : defaultDepth;
+        SearchLimits limits = new SearchLimits(depth);
+
+        long [] totalNodes = new long [engineNames.length];
+        long [] totalTime = new long [engineNames.length];
+        int [] proven = new int [engineNames.length];
+        System.out.printf("%-34s %-10s %-8s %-6s %12s %9s%n", "position", "engine", "move", "score", "nodes", "ms");
+        for (int [] heaps : positions) {
+            Position position = EngineFactory.position(heaps);
+            for (int e = 0; e < engineNames.length; e++) {
+                SearchEngine engine = EngineFactory.create(engineNames[e], new TranspositionTable(tableBytes));
+                long startTime = System.nanoTime();
+                SearchResult result = engine.search(position, limits);
+                long time = (System.nanoTime() - startTime) / 1000000;
+
+                if (result.getScore() == 0 || result.getScore() == 1) {
+                    proven[e]++;
+                }
+                totalNodes[e] += result.getNodes();
+                totalTime[e] += time;
+                System.out.printf("%-34s %-10s %-8s %-6s %12d %9d%n", position, engineNames[e],
+                        result.getColumn() + "," + result.getRow(), result.getScore(), result.getNodes(), time);
+            }
+        }
+
+        System.out.println();
+        System.out.printf("depth %d, %d positions%n", depth, positions.length);
+        for (int e = 0; e < engineNames.length; e++) {
+            System.out.printf("%-10s nodes %12d  ms %9d  solved %d/%d%n",
+                    engineNames[e], totalNodes[e], totalTime[e], proven[e], positions.length);
+        }
+    }
+}
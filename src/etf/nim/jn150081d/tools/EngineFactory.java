@@ -0,0 +1,84 @@
+package etf.nim.jn150081d.tools;
+
+import etf.nim.jn150081d.minimax.*;
+
+/**
+ * EngineFactory creates the engines of the tools by name and holds the corpus of positions they search,
+ * so benchmarks, comparisons and tournaments build the same engines
+ *
+ * Every engine searches on the calling thread, so measured times and allocations belong to the search,
+ * and pro searches without the tablebase
+ */
+final class EngineFactory {
+
+    static final String [] engineNames = { "random", "minimax", "alpha-beta", "selective", "mtd(f)", "df-pn",
+            "mcts", "pro" };
+    static final int [][] corpus = {
+            { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 },
+            { 10, 4, 7, 2, 5, 8, 1 },
+            { 9, 3, 6, 10, 1, 5 },
+            { 3, 5, 7, 9, 10, 1 },
+            { 8, 6, 4, 2 },
+            { 6, 3, 9, 1, 4 },
+            { 15, 13, 11, 9, 7, 5, 3, 1 },
+            { 14, 12, 10, 8, 6 }
+    };
+    static final long playouts = 20000;
+
+    /**
+     * EngineFactory has only static members
+     */
+    private EngineFactory() {
+    }
+
+    /**
+     * Creates a fresh engine searching on the calling thread
+     *
+     * @param name engine name, one of engineNames
+     * @param table transposition table of mtd(f) and pro, cleared by the caller if it is reused, may be null
+     *              for the other engines
+     * @return search engine
+     */
+    static SearchEngine create(String name, TranspositionTable table) {
+        switch (name) {
+            case "random":
+                return new RandomAi();
+            case "minimax":
+                return new Minimax();
+            case "alpha-beta":
+                return new AlphaBeta();
+            case "selective":
+                return new AlphaBeta(null, true);
+            case "mtd(f)":
+                return new MtdfAI(table, 1);
+            case "df-pn":
+                return new DfpnSolver(new AlphaBeta());
+            case "mcts":
+                return new MctsAI(null, playouts);
+            case "pro":
+                return new ProAI(null, table);
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + name);
+        }
+    }
+
+    /**
+     * Checks if the engine searches with a transposition table
+     *
+     * @param name engine name, one of engineNames
+     * @return whether create needs a table for the engine
+     */
+    static boolean usesTable(String name) {
+        return name.equals("mtd(f)") || name.equals("pro");
+    }
+
+    /**
+     * Position of the corpus, the previous move is the number of heaps
+     *
+     * @param heaps heights of the heaps, one of the corpus
+     * @return position to be searched
+     */
+    static Position position(int [] heaps) {
+        return new Position(heaps, heaps.length, heaps.length);
+    }
+}
@@ -0,0 +1,113 @@
+package etf.nim.jn150081d.tools;
+
+/**
+ * LatencyHistogram counts durations in buckets of about 3% width, so percentiles of millions
+ * of samples take a fixed amount of memory
+ *
+ * Durations are recorded in microseconds. Below 64 every value has its own bucket, above it every
+ * power of two range is split into 32 buckets. The maximum is kept exactly. Not thread safe,
+ * every thread records into its own histogram and they are merged afterwards
+ */
+public final class LatencyHistogram {
+    private static final int subBits = 5;
+    private static final int subBuckets = 1 << subBits;
+    private static final int linearBuckets = 2 * subBuckets;
+    private static final int buckets = linearBuckets + (64 - subBits - 1) * subBuckets;
+
+    private final long [] counts = new long [buckets];
+    private long total;
+    private long max;
+
+    /**
+     * Records one duration
+     *
+     * @param nanos duration in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts[index(micros)]++;
+        total++;
+        max = Math.max(max, micros);
+    }
+
+    /**
+     * Adds the samples of another histogram
+     *
+     * @param other histogram to be added
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < buckets; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Number of recorded durations
+     *
+     * @return number of samples
+     */
+    public long getCount() {
+        return total;
+    }
+
+    /**
+     * Longest recorded duration
+     *
+     * @return maximum in milliseconds
+     */
+    public double getMax() {
+        return max / 1000.0;
+    }
+
+    /**
+     * Duration not exceeded by the given share of the samples, accurate to the bucket width
+     *
+     * @param quantile share of the samples, between 0 and 1
+     * @return upper bound of the bucket holding the quantile in milliseconds, or 0 without samples
+     */
+    public double getPercentile(double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < buckets; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), max) / 1000.0;
+            }
+        }
+        return max / 1000.0;
+    }
+
+    /**
+     * Bucket of the duration
+     *
+     * @param micros duration in microseconds
+     * @return bucket index
+     */
+    private static int index(long micros) {
+        if (micros < linearBuckets) {
+            return (int) micros;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - subBits;
+        return linearBuckets + (shift - 1) * subBuckets + (int) ((micros >>> shift) - subBuckets);
+    }
+
+    /**
+     * Highest duration of the bucket
+     *
+     * @param index bucket index
+     * @return duration in microseconds
+     */
+    private static long highest(int index) {
+        if (index < linearBuckets) {
+            return index;
+        }
+        int shift = (index - linearBuckets) / subBuckets + 1;
+        long sub = (index - linearBuckets) % subBuckets + subBuckets;
+        return ((sub + 1) << shift) - 1;
+    }
+}
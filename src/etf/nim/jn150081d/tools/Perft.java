@@ -0,0 +1,297 @@
+package etf.nim.jn150081d.tools;
+
+import etf.nim.jn150081d.minimax.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Perft counts the move sequences of the given length from a position, the simplest measure
+ * of the raw speed of the game logic and a check of the move generators
+ *
+ * Sequences ending with a player without a valid move before the depth is reached are not counted.
+ * Positions that fit PackedState are counted with MoveGenerator, larger ones with LargeState. With -check
+ * the counts of every first move are compared to a generator that tries every chip of every heap with
+ * the rules of the GUI move check, so any difference shows where the fast generator goes wrong. First moves
+ * found by only one of the two are reported as mismatches too
+ *
+ * Usage: Perft [-threads n] [-check] depth prevMove heap...
+ */
+public class Perft {
+
+    private static final int splitDepth = 3;
+
+    /**
+     * Counts the sequences under one first move, counts of deep subtrees are split between threads
+     */
+    private static final class Count extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final Position position;
+        private final int depth;
+
+        /**
+         * Count constructor
+         *
+         * @param position position after the first moves
+         * @param depth number of moves still to be played
+         */
+        Count(Position position, int depth) {
+            this.position = position;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            if (depth < splitDepth) {
+                return count(position, depth);
+            }
+            List<Count> counts = new ArrayList<>();
+            for (Position child : children(position)) {
+                counts.add(new Count(child, depth - 1));
+            }
+            invokeAll(counts);
+            long nodes = 0;
+            for (Count count : counts) {
+                nodes += count.join();
+            }
+            return nodes;
+        }
+    }
+
+    /**
+     * Runs the count
+     *
+     * @param args options, depth, previous move and the heights of the heaps
+     */
+    public static void main(String [] args) {
+        int threads = 1;
+        boolean check = false;
+        int index = 0;
+        while (index < args.length && args[index].startsWith("-")) {
+            if (args[index].equals("-threads")) {
+                threads = Integer.parseInt(args[index + 1]);
+                index += 2;
+            } else if (args[index].equals("-check")) {
+                check = true;
+                index++;
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + args[index]);
+            }
+        }
+        if (args.length - index < 3) {
+            System.out.println("Usage: Perft [-threads n] [-check] depth prevMove heap...");
+            return;
+        }
+        int depth = Integer.parseInt(args[index]);
+        int prevMove = Integer.parseInt(args[index + 1]);
+        int [] heaps = new int [args.length - index - 2];
+        for (int i = 0; i < heaps.length; i++) {
+            heaps[i] = Integer.parseInt(args[index + 2 + i]);
+        }
+        if (depth < 1) {
+            throw new IllegalArgumentException("Invalid depth: " + depth);
+        }
+        Position position = new Position(heaps, heaps.length, prevMove);
+
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        long total = 0;
+        long checkTotal = 0;
+        int mismatches = 0;
+        long startTime = System.nanoTime();
+        List<Position> children = children(position);
+        Set<Position> ruleChildren = check ? new LinkedHashSet<>(ruleChildren(position)) : new LinkedHashSet<>();
+        for (Position child : children) {
+            long nodes = pool != null ? pool.invoke(new Count(child, depth - 1)) : count(child, depth - 1);
+            total += nodes;
+            String line = String.format("%-40s %14d", child, nodes);
+            if (check) {
+                if (!ruleChildren.remove(child)) {
+                    mismatches++;
+                    line += "  not valid by the rules";
+                } else {
+                    long checkNodes = checkCount(child, depth - 1);
+                    checkTotal += checkNodes;
+                    if (checkNodes != nodes) {
+                        mismatches++;
+                        line += String.format("  rules %d", checkNodes);
+                    }
+                }
+            }
+            System.out.println(line);
+        }
+        // moves valid by the rules that the generator missed
+        for (Position child : ruleChildren) {
+            long checkNodes = checkCount(child, depth - 1);
+            checkTotal += checkNodes;
+            mismatches++;
+            System.out.printf("%-40s %14s  not generated, rules %d%n", child, "-", checkNodes);
+        }
+        long nanos = System.nanoTime() - startTime;
+        if (pool != null) {
+            pool.shutdown();
+        }
+
+        System.out.println();
+        System.out.printf("perft(%d) of %s = %d%n", depth, position, total);
+        if (check) {
+            System.out.printf("rules count %d, %d first moves differ%n", checkTotal, mismatches);
+        } else {
+            System.out.printf("%.0f ms, %.0f nodes/s, %d threads, %s generator%n", nanos / 1e6, total / (nanos / 1e9),
+                    threads, position.isSmall() ? "packed" : "large");
+        }
+    }
+
+    /**
+     * Counts the sequences with the fast generator of the position size
+     *
+     * @param position position to count from
+     * @param depth length of the sequences
+     * @return number of sequences
+     */
+    private static long count(Position position, int depth) {
+        return position.isSmall() ? count(position.pack(), depth, new int [depth + 1][MoveGenerator.maxMoves])
+                : count(LargeState.of(position), depth);
+    }
+
+    /**
+     * Counts the sequences from a packed state, the last ply is counted without playing its moves
+     *
+     * @param state packed state
+     * @param depth length of the sequences
+     * @param moves move buffer of each depth
+     * @return number of sequences
+     */
+    private static long count(long state, int depth, int [][] moves) {
+        if (depth == 0) {
+            return 1;
+        }
+        int count = MoveGenerator.generate(state, moves[depth]);
+        if (depth == 1) {
+            return count;
+        }
+        long nodes = 0;
+        for (int k = 0; k < count; k++) {
+            int move = moves[depth][k];
+            nodes += count(PackedState.play(state, MoveGenerator.column(move), MoveGenerator.row(move)), depth - 1, moves);
+        }
+        return nodes;
+    }
+
+    /**
+     * Counts the sequences from a large state, the last ply is counted without playing its moves
+     *
+     * @param state large state
+     * @param depth length of the sequences
+     * @return number of sequences
+     */
+    private static long count(LargeState state, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        if (depth == 1) {
+            return state.countMoves();
+        }
+        long nodes = 0;
+        for (int move : state.moves()) {
+            nodes += count(state.play(move), depth - 1);
+        }
+        return nodes;
+    }
+
+    /**
+     * Counts the sequences trying every chip of every heap with the rules of the GUI move check
+     *
+     * @param position position to count from
+     * @param depth length of the sequences
+     * @return number of sequences
+     */
+    private static long checkCount(Position position, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        long nodes = 0;
+        for (Position child : ruleChildren(position)) {
+            nodes += checkCount(child, depth - 1);
+        }
+        return nodes;
+    }
+
+    /**
+     * Positions after the valid moves, found by the fast generator of the position size
+     *
+     * @param position position to play from
+     * @return positions after each valid move
+     */
+    private static List<Position> children(Position position) {
+        List<Position> children = new ArrayList<>();
+        if (position.isSmall()) {
+            int [] moves = new int [MoveGenerator.maxMoves];
+            int count = MoveGenerator.generate(position.pack(), moves);
+            for (int k = 0; k < count; k++) {
+                children.add(position.play(MoveGenerator.column(moves[k]), MoveGenerator.row(moves[k])));
+            }
+        } else {
+            for (int move : LargeState.of(position).moves()) {
+                children.add(position.play(position.column(LargeState.from(move)), LargeState.to(move)));
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Positions after the valid moves, found by trying every chip of every heap
+     *
+     * The children are built from the heights directly, since Position.play checks the move
+     * with the generator again and would reject the moves the two disagree on
+     *
+     * @param position position to play from
+     * @return positions after each valid move
+     */
+    private static List<Position> ruleChildren(Position position) {
+        List<Position> children = new ArrayList<>();
+        int [] heaps = new int [position.getNumHeaps()];
+        for (int i = 0; i < heaps.length; i++) {
+            heaps[i] = position.getHeight(i);
+        }
+        for (int column = 0; column < heaps.length; column++) {
+            int height = heaps[column];
+            for (int row = 0; row < height; row++) {
+                if (isMoveValid(position, column, row)) {
+                    heaps[column] = row;
+                    children.add(new Position(heaps, heaps.length, height - row));
+                    heaps[column] = height;
+                }
+            }
+        }
+        return children;
+    }
+
+    /**
+     * The rules of the game as checked by the GUI, written out without the packed representation
+     *
+     * @param position position to play from
+     * @param column column of the selected chip
+     * @param row row of the selected chip
+     * @return whether the move is valid
+     */
+    private static boolean isMoveValid(Position position, int column, int row) {
+        int height = position.getHeight(column);
+        if (row >= height || height - row > 2L * position.getPrevMove()) {
+            return false;
+        }
+        if (row == 0) {
+            return true;
+        }
+        for (int i = 0; i < position.getNumHeaps(); i++) {
+            if (position.getHeight(i) == row) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,132 @@
+package etf.nim.jn150081d.tools;
+
+import etf.nim.jn150081d.minimax.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * SelectiveSearchReport searches random positions with the full-width and the selective alpha-beta
+ * at a fixed depth and prints the nodes, the time and how often both select the same move
+ *
+ * Both engines pick randomly among the moves with the best score, so the move agreement of the selective
+ * search is compared to the agreement of a repeated full-width search, and the score agreement shows
+ * whether the selective search found a move as good as the full-width one. A win or a loss proven
+ * by the full-width search must be reached by the selective one too, every difference is reported
+ *
+ * Usage: SelectiveSearchReport [depth] [positions] [seed]
+ */
+public class SelectiveSearchReport {
+
+    private static final int defaultDepth = 8;
+    private static final int defaultPositions = 40;
+    private static final long defaultSeed = 1;
+    private static final int minHeaps = 4;
+
+    /**
+     * Runs the report
+     *
+     * @param args optional search depth, number of positions and random seed
+     */
+    public static void main(String [] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : defaultDepth;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : defaultPositions;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : defaultSeed;
+        SearchLimits limits = new SearchLimits(depth);
+        Random random = new Random(seed);
+
+        AlphaBeta full = new AlphaBeta(null, false);
+        AlphaBeta selective = new AlphaBeta(null, true);
+        long fullNodes = 0;
+        long selectiveNodes = 0;
+        long fullTime = 0;
+        long selectiveTime = 0;
+        int sameMove = 0;
+        int repeatedSameMove = 0;
+        int sameScore = 0;
+        int proven = 0;
+        int provenDiffers = 0;
+        System.out.printf("%-34s %-8s %-6s %10s %-8s %-6s %10s%n",
+                "position", "full", "score", "nodes", "select", "score", "nodes");
+        for (int i = 0; i < count; i++) {
+            Position position = randomPosition(random);
+
+            long startTime = System.nanoTime();
+            SearchResult fullResult = full.search(position, limits);
+            fullTime += System.nanoTime() - startTime;
+            startTime = System.nanoTime();
+            SearchResult selectiveResult = selective.search(position, limits);
+            selectiveTime += System.nanoTime() - startTime;
+
+            SearchResult repeatedResult = full.search(position, limits);
+
+            fullNodes += fullResult.getNodes();
+            selectiveNodes += selectiveResult.getNodes();
+            if (sameMove(fullResult, selectiveResult)) {
+                sameMove++;
+            }
+            if (sameMove(fullResult, repeatedResult)) {
+                repeatedSameMove++;
+            }
+            if (fullResult.getScore() == selectiveResult.getScore()) {
+                sameScore++;
+            }
+            boolean differs = false;
+            if (fullResult.getScore() == 0 || fullResult.getScore() == 1) {
+                proven++;
+                differs = fullResult.getScore() != selectiveResult.getScore();
+                if (differs) {
+                    provenDiffers++;
+                }
+            }
+            System.out.printf("%-34s %-8s %-6s %10d %-8s %-6s %10d%s%n", position,
+                    fullResult.getColumn() + "," + fullResult.getRow(), fullResult.getScore(), fullResult.getNodes(),
+                    selectiveResult.getColumn() + "," + selectiveResult.getRow(), selectiveResult.getScore(),
+                    selectiveResult.getNodes(), differs ? "  proven score differs" : "");
+        }
+
+        System.out.println();
+        System.out.printf("depth %d, %d positions, seed %d%n", depth, count, seed);
+        System.out.printf("full-width nodes %12d  ms %9d%n", fullNodes, fullTime / 1000000);
+        System.out.printf("selective  nodes %12d  ms %9d  (%.1f%% of the nodes)%n",
+                selectiveNodes, selectiveTime / 1000000, 100.0 * selectiveNodes / Math.max(1, fullNodes));
+        System.out.printf("reductions %d, re-searches %d, futility prunes %d%n",
+                selective.getReductions(), selective.getResearches(), selective.getFutilityPrunes());
+        System.out.printf("same move %d/%d (repeated full-width search %d/%d), same score %d/%d%n",
+                sameMove, count, repeatedSameMove, count, sameScore, count);
+        System.out.printf("proven scores differ %d/%d%n", provenDiffers, proven);
+    }
+
+    /**
+     * Checks if both searches selected the same move
+     *
+     * @param first result of the first search
+     * @param second result of the second search
+     * @return whether the moves are equal
+     */
+    private static boolean sameMove(SearchResult first, SearchResult second) {
+        return first.getColumn() == second.getColumn() && first.getRow() == second.getRow();
+    }
+
+    /**
+     * Generates a position with distinct heap heights and some valid moves
+     *
+     * @param random random number generator
+     * @return random position
+     */
+    private static Position randomPosition(Random random) {
+        int numHeaps = minHeaps + random.nextInt(PackedState.maxHeaps - minHeaps + 1);
+        List<Integer> heights = new ArrayList<>();
+        for (int height = 1; height <= PackedState.maxHeight; height++) {
+            heights.add(height);
+        }
+        Collections.shuffle(heights, random);
+        int [] heaps = new int [numHeaps];
+        for (int i = 0; i < numHeaps; i++) {
+            heaps[i] = heights.get(i);
+        }
+        return new Position(heaps, numHeaps, numHeaps + random.nextInt(PackedState.maxHeight));
+    }
+}
@@ -0,0 +1,117 @@
+package etf.nim.jn150081d.tools;
+
+import etf.nim.jn150081d.minimax.*;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SmpCancelCheck cancels running Lazy SMP searches and checks the next search of the same engine
+ *
+ * The helpers of a pro smp engine are reused by its next search, so a cancelled search has to wait for
+ * them to stop. A helper left running would search the old root alongside the next search on the same
+ * instance. No helper may still be searching when a search of the engine returns, cancelled or not,
+ * and after every cancel the next search has to report the nodes added to the metrics, and a proven
+ * score has to agree with the tablebase. Which positions a search proves depends on the helpers,
+ * so unproven scores are not compared
+ *
+ * Usage: SmpCancelCheck [threads]
+ */
+public class SmpCancelCheck {
+
+    private static final int defaultThreads = 4;
+    private static final int rounds = 5;
+    private static final int cancelledDepth = 40;
+    private static final int depth = 12;
+    private static final long cancelMillis = 50;
+    private static final long tableBytes = 64L << 20;
+    private static final int [] cancelledHeaps = EngineFactory.corpus[0];
+
+    /**
+     * Runs the check
+     *
+     * @param args optional number of threads of the engine
+     */
+    public static void main(String [] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : defaultThreads;
+        Position cancelled = EngineFactory.position(cancelledHeaps);
+        SearchLimits limits = new SearchLimits(depth);
+        Tablebase tablebase = Tablebase.getDefault();
+        TranspositionTable table = new TranspositionTable(tableBytes);
+        AtomicInteger leaks = new AtomicInteger();
+        // searches of one engine run one at a time, so none is running when a request returns
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>()) {
+            @Override
+            protected void afterExecute(Runnable runnable, Throwable failure) {
+                if (helpersRunning()) {
+                    leaks.incrementAndGet();
+                }
+            }
+        };
+        AsyncEngine engine = new AsyncEngine(new ProAI(null, table, threads), executor);
+        SearchMetrics metrics = SearchMetrics.forEngine(ProAI.class.getSimpleName());
+        int searches = 0;
+        int failures = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (int [] heaps : EngineFactory.corpus) {
+                Position searched = EngineFactory.position(heaps);
+                if (!searched.isSmall()) {
+                    continue;
+                }
+                searches++;
+                CompletableFuture<SearchResult> running = engine.search(cancelled, new SearchLimits(cancelledDepth));
+                Thread.sleep(cancelMillis);
+                running.cancel(true);
+                SearchResult result;
+                long recorded;
+                try {
+                    // queued behind the cancelled search, so its last counters are added before the nodes are read
+                    engine.search(searched, new SearchLimits(1)).get();
+                    table.clear();
+                    long nodesBefore = metrics.getNodes();
+                    result = engine.search(searched, limits).get();
+                    recorded = metrics.getNodes() - nodesBefore;
+                } catch (ExecutionException | CancellationException e) {
+                    System.out.printf("%-34s search failed: %s%n", searched, e);
+                    failures++;
+                    continue;
+                }
+                float score = result.getScore();
+                boolean proven = score == 0 || score == 1;
+                boolean wrongScore = proven && (score == 1) != tablebase.isWin(searched.pack());
+                boolean nodesDiffer = recorded != result.getNodes();
+                if (wrongScore || nodesDiffer) {
+                    failures++;
+                }
+                System.out.printf("%-34s score %s, nodes %d, recorded %d%s%s%n", searched, score, result.getNodes(),
+                        recorded, wrongScore ? ", wrong score" : "", nodesDiffer ? ", nodes differ" : "");
+            }
+        }
+        executor.shutdown();
+        System.out.println();
+        System.out.printf("%d of %d searches after a cancel failed, helpers still running after %d searches%n",
+                failures, searches, leaks.get());
+    }
+
+    /**
+     * Checks if any thread is still running a helper search
+     *
+     * @return whether a helper search is running
+     */
+    private static boolean helpersRunning() {
+        for (StackTraceElement [] stack : Thread.getAllStackTraces().values()) {
+            for (StackTraceElement frame : stack) {
+                if (frame.getClassName().equals(ProAI.class.getName()) && frame.getMethodName().equals("helperSearch")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
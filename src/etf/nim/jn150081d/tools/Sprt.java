@@ -0,0 +1,124 @@
+package etf.nim.jn150081d.tools;
+
+/**
+ * Sprt is the sequential probability ratio test of two engines, it decides after every game whether
+ * the first engine is stronger than the second by elo0 or by elo1 rating points
+ *
+ * Games always end with a win, so the result of a game is a Bernoulli trial with the expected score of
+ * the Elo model, 1 / (1 + 10^(-elo / 400)). The log-likelihood ratio of the two hypotheses grows with every
+ * win of the first engine and drops with every loss, and the test stops once it leaves the bounds given
+ * by the error rates. On average this needs far fewer games than a fixed count of the same power
+ */
+public final class Sprt {
+
+    /**
+     * State of the test
+     */
+    public enum Status { CONTINUE, ACCEPT_H0, ACCEPT_H1 }
+
+    private final double elo0;
+    private final double elo1;
+    private final double winWeight;
+    private final double lossWeight;
+    private final double lowerBound;
+    private final double upperBound;
+
+    /**
+     * Sprt constructor
+     *
+     * @param elo0 rating difference of the null hypothesis
+     * @param elo1 rating difference of the alternative hypothesis, above elo0
+     * @param alpha probability of accepting H1 when H0 holds
+     * @param beta probability of accepting H0 when H1 holds
+     */
+    public Sprt(double elo0, double elo1, double alpha, double beta) {
+        if (elo1 <= elo0) {
+            throw new IllegalArgumentException("Invalid hypotheses: " + elo0 + ", " + elo1);
+        }
+        if (alpha <= 0 || alpha >= 0.5 || beta <= 0 || beta >= 0.5) {
+            throw new IllegalArgumentException("Invalid error rates: " + alpha + ", " + beta);
+        }
+        double score0 = score(elo0);
+        double score1 = score(elo1);
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        winWeight = Math.log(score1 / score0);
+        lossWeight = Math.log((1 - score1) / (1 - score0));
+        lowerBound = Math.log(beta / (1 - alpha));
+        upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    /**
+     * Log-likelihood ratio of H1 against H0
+     *
+     * @param wins games won by the first engine
+     * @param losses games lost by the first engine
+     * @return log-likelihood ratio
+     */
+    public double llr(long wins, long losses) {
+        return wins * winWeight + losses * lossWeight;
+    }
+
+    /**
+     * Decides the test
+     *
+     * @param wins games won by the first engine
+     * @param losses games lost by the first engine
+     * @return accepted hypothesis, or CONTINUE if more games are needed
+     */
+    public Status status(long wins, long losses) {
+        double llr = llr(wins, losses);
+        if (llr >= upperBound) {
+            return Status.ACCEPT_H1;
+        }
+        if (llr <= lowerBound) {
+            return Status.ACCEPT_H0;
+        }
+        return Status.CONTINUE;
+    }
+
+    /**
+     * Lower bound of the log-likelihood ratio
+     *
+     * @return bound at which H0 is accepted
+     */
+    public double getLowerBound() {
+        return lowerBound;
+    }
+
+    /**
+     * Upper bound of the log-likelihood ratio
+     *
+     * @return bound at which H1 is accepted
+     */
+    public double getUpperBound() {
+        return upperBound;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SPRT elo0=%.1f elo1=%.1f bounds [%.3f, %.3f]", elo0, elo1, lowerBound, upperBound);
+    }
+
+    /**
+     * Rating difference of the score, clamped for scores of 0 and 1
+     *
+     * @param wins games won by the first engine
+     * @param losses games lost by the first engine
+     * @return estimated rating difference
+     */
+    public static double elo(long wins, long losses) {
+        double score = (wins + 0.5) / (wins + losses + 1.0);
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    /**
+     * Expected score of the Elo model
+     *
+     * @param elo rating difference
+     * @return probability of a win
+     */
+    private static double score(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+}
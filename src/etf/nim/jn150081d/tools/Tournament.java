@@ -0,0 +1,560 @@
+package etf.nim.jn150081d.tools;
+
+import etf.nim.jn150081d.minimax.*;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tournament plays engine versus engine games without the GUI, many at once, and reports
+ * the win rates, move latency percentiles and nodes of every player
+ *
+ * Every pair of players plays the given number of games, each start position twice with the sides swapped.
+ * Start positions are random setups like the ones of the GUI random button, or the given heap heights.
+ * Every game runs on one thread with its own engines, searching on that thread, so games never wait for
+ * each other and there is no delay between the moves. The player without a valid move loses
+ *
+ * Positions too large to be packed are searched by LargeBoardAI, so on them every player but random
+ * plays Monte Carlo tree search, the report says when a start position is that large
+ *
+ * Players are given as name:depth, for example alpha-beta:8 or mcts. The report is printed and
+ * optionally written as CSV, one row per player, and as JSON with the results of every pair
+ *
+ * With -sprt elo0,elo1 two players are compared by the sequential probability ratio test, see Sprt,
+ * and no more games are started once it is decided. The number of games is then only the maximum
+ *
+ * Usage: Tournament [-games n] [-threads n] [-time ms] [-heaps n] [-start h,h,...] [-prevMove n]
+ *                   [-seed n] [-sprt elo0,elo1] [-alpha p] [-beta p] [-csv file] [-json file] player player...
+ */
+public class Tournament {
+
+    private static final int defaultDepth = 4;
+    private static final int defaultGames = 100;
+    private static final int defaultSprtGames = 20000;
+    private static final double defaultErrorRate = 0.05;
+    private static final int maxHeaps = PackedState.maxHeaps;
+    private static final int minRandomHeaps = 3;
+    private static final long tableBytes = 8L << 20;
+
+    private final List<Player> players;
+    private final List<Game> schedule;
+    private final SearchLimits [] limits;
+    private final int threads;
+    private final Stats [] stats;
+    private final int [][] pairWins;
+    private final Sprt sprt;
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private volatile boolean stopped;
+    private int played;
+    private Sprt.Status decision = Sprt.Status.CONTINUE;
+    private int decisionGames;
+
+    /**
+     * Engine and search depth of one player
+     */
+    private static final class Player {
+        final String name;
+        final int depth;
+
+        /**
+         * Player constructor
+         *
+         * @param spec engine name, optionally followed by a colon and the search depth
+         */
+        Player(String spec) {
+            int colon = spec.lastIndexOf(':');
+            name = colon == -1 ? spec : spec.substring(0, colon);
+            depth = colon == -1 ? defaultDepth : Integer.parseInt(spec.substring(colon + 1));
+            if (!Arrays.asList(EngineFactory.engineNames).contains(name)) {
+                throw new IllegalArgumentException("Unknown engine: " + name);
+            }
+        }
+
+        /**
+         * Creates a fresh engine searching on the calling thread, positions too large to be packed are
+         * searched by LargeBoardAI
+         *
+         * @param table cleared transposition table, or null if the engine does not use one
+         * @return search engine
+         */
+        SearchEngine createEngine(TranspositionTable table) {
+            SearchEngine engine = EngineFactory.create(name, table);
+            if (engine instanceof RandomAi) {
+                return engine;
+            }
+            return new ScalableEngine(engine, new LargeBoardAI(null, EngineFactory.playouts));
+        }
+
+        @Override
+        public String toString() {
+            return name + ":" + depth;
+        }
+    }
+
+    /**
+     * Start position and sides of one game
+     */
+    private static final class Game {
+        final int first;
+        final int second;
+        final int [] heaps;
+        final int prevMove;
+
+        /**
+         * Game constructor
+         *
+         * @param first index of the player moving first
+         * @param second index of the player moving second
+         * @param heaps heights of the heaps at the start
+         * @param prevMove previous move at the start
+         */
+        Game(int first, int second, int [] heaps, int prevMove) {
+            this.first = first;
+            this.second = second;
+            this.heaps = heaps;
+            this.prevMove = prevMove;
+        }
+    }
+
+    /**
+     * Results of one player, summed over games
+     */
+    private static final class Stats {
+        long games;
+        long wins;
+        long moves;
+        long nodes;
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        /**
+         * Adds the results of another game
+         *
+         * @param other results to be added
+         */
+        void add(Stats other) {
+            games += other.games;
+            wins += other.wins;
+            moves += other.moves;
+            nodes += other.nodes;
+            latency.add(other.latency);
+        }
+    }
+
+    /**
+     * Tournament constructor
+     *
+     * @param players players of the tournament, every pair plays
+     * @param schedule games to be played
+     * @param limits search configuration of each player
+     * @param threads number of games played at once
+     * @param sprt test deciding between the first two players, or null to play all games
+     */
+    private Tournament(List<Player> players, List<Game> schedule, SearchLimits [] limits, int threads, Sprt sprt) {
+        this.players = players;
+        this.schedule = schedule;
+        this.limits = limits;
+        this.threads = threads;
+        this.sprt = sprt;
+        stats = new Stats [players.size()];
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new Stats();
+        }
+        pairWins = new int [players.size()][players.size()];
+    }
+
+    /**
+     * Runs the tournament
+     *
+     * @param args options and players
+     */
+    public static void main(String [] args) {
+        int games = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long time = 0;
+        int heaps = 0;
+        int [] start = null;
+        int prevMove = maxHeaps;
+        long seed = 1;
+        double [] hypotheses = null;
+        double alpha = defaultErrorRate;
+        double beta = defaultErrorRate;
+        String csv = null;
+        String json = null;
+        List<Player> players = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-games":
+                    games = Integer.parseInt(args[++i]);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "-time":
+                    time = Long.parseLong(args[++i]);
+                    break;
+                case "-heaps":
+                    heaps = Integer.parseInt(args[++i]);
+                    break;
+                case "-start":
+                    start = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "-prevMove":
+                    prevMove = Integer.parseInt(args[++i]);
+                    break;
+                case "-seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "-sprt":
+                    hypotheses = Arrays.stream(args[++i].split(",")).mapToDouble(Double::parseDouble).toArray();
+                    break;
+                case "-alpha":
+                    alpha = Double.parseDouble(args[++i]);
+                    break;
+                case "-beta":
+                    beta = Double.parseDouble(args[++i]);
+                    break;
+                case "-csv":
+                    csv = args[++i];
+                    break;
+                case "-json":
+                    json = args[++i];
+                    break;
+                default:
+                    players.add(new Player(args[i]));
+                    break;
+            }
+        }
+        if (players.size() < 2) {
+            System.out.println("Usage: Tournament [-games n] [-threads n] [-time ms] [-heaps n] [-start h,h,...] "
+                    + "[-prevMove n] [-seed n] [-sprt elo0,elo1] [-alpha p] [-beta p] [-csv file] [-json file] "
+                    + "player player...");
+            return;
+        }
+        Sprt sprt = null;
+        if (hypotheses != null) {
+            if (hypotheses.length != 2 || players.size() != 2) {
+                throw new IllegalArgumentException("SPRT needs two hypotheses and two players");
+            }
+            sprt = new Sprt(hypotheses[0], hypotheses[1], alpha, beta);
+        }
+        if (games == 0) {
+            games = sprt != null ? defaultSprtGames : defaultGames;
+        }
+        if (games < 1 || threads < 1 || heaps < 0 || heaps > maxHeaps) {
+            throw new IllegalArgumentException("Invalid tournament options");
+        }
+        if (start != null) {
+            // heights out of range or shared by two heaps are rejected by Position
+            try {
+                for (int height : start) {
+                    if (height < 1) {
+                        throw new IllegalArgumentException("Invalid heap state: " + height);
+                    }
+                }
+                new Position(start, start.length, prevMove);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid start position: " + e.getMessage());
+                return;
+            }
+        }
+
+        SearchLimits [] limits = new SearchLimits [players.size()];
+        for (int i = 0; i < limits.length; i++) {
+            int depth = players.get(i).depth;
+            limits[i] = time > 0 ? new SearchLimits(depth, time, 0) : new SearchLimits(depth);
+        }
+        Random random = new Random(seed);
+        List<Game> schedule = new ArrayList<>();
+        for (int a = 0; a < players.size(); a++) {
+            for (int b = a + 1; b < players.size(); b++) {
+                for (int g = 0; g < games; g += 2) {
+                    int [] heights = start != null ? start : randomSetup(random, heaps);
+                    schedule.add(new Game(a, b, heights, prevMove));
+                    if (g + 1 < games) {
+                        schedule.add(new Game(b, a, heights, prevMove));
+                    }
+                }
+            }
+        }
+
+        Tournament tournament = new Tournament(players, schedule, limits, threads, sprt);
+        long startTime = System.nanoTime();
+        try {
+            tournament.run();
+        } catch (ExecutionException e) {
+            // a partial report would look like a valid result
+            System.err.println("Game failed, tournament aborted");
+            e.getCause().printStackTrace();
+            System.exit(1);
+        } catch (InterruptedException e) {
+            System.err.println("Tournament interrupted");
+            System.exit(1);
+        }
+        long millis = (System.nanoTime() - startTime) / 1000000;
+        tournament.print(millis);
+        try {
+            if (csv != null) {
+                tournament.writeCsv(csv);
+            }
+            if (json != null) {
+                tournament.writeJson(json, millis);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write the report: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Random setup of the GUI, distinct heights between 1 and the maximal number of heaps
+     *
+     * @param random random number generator
+     * @param heaps number of heaps, or 0 for a random number
+     * @return heights of the heaps
+     */
+    private static int [] randomSetup(Random random, int heaps) {
+        int count = heaps > 0 ? heaps : minRandomHeaps + random.nextInt(maxHeaps - minRandomHeaps + 1);
+        List<Integer> values = new ArrayList<>(maxHeaps);
+        for (int i = 1; i <= maxHeaps; i++) {
+            values.add(i);
+        }
+        Collections.shuffle(values, random);
+        int [] heights = new int [count];
+        for (int i = 0; i < count; i++) {
+            heights[i] = values.get(i);
+        }
+        return heights;
+    }
+
+    /**
+     * Plays the scheduled games on the worker threads, the first failed game stops the others
+     *
+     * @throws ExecutionException if a game failed
+     * @throws InterruptedException if the calling thread was interrupted
+     */
+    private void run() throws ExecutionException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+        for (int i = 0; i < threads; i++) {
+            completion.submit(() -> {
+                // one table per side, allocated once by the worker and cleared before every game
+                TranspositionTable [] tables = new TranspositionTable [2];
+                for (int index = nextGame.getAndIncrement(); index < schedule.size() && !stopped;
+                     index = nextGame.getAndIncrement()) {
+                    play(schedule.get(index), tables);
+                }
+                return null;
+            });
+        }
+        try {
+            for (int i = 0; i < threads; i++) {
+                completion.take().get();
+            }
+        } finally {
+            // no new games are started and the running ones are interrupted
+            stopped = true;
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays one game and adds its results
+     *
+     * @param game game to be played
+     * @param tables transposition tables of the worker, one per side, allocated when first needed
+     */
+    private void play(Game game, TranspositionTable [] tables) {
+        int [] sides = { game.first, game.second };
+        SearchEngine [] engines = new SearchEngine [2];
+        for (int i = 0; i < engines.length; i++) {
+            Player player = players.get(sides[i]);
+            TranspositionTable table = null;
+            if (EngineFactory.usesTable(player.name)) {
+                if (tables[i] == null) {
+                    tables[i] = new TranspositionTable(tableBytes);
+                } else {
+                    tables[i].clear();
+                }
+                table = tables[i];
+            }
+            engines[i] = player.createEngine(table);
+        }
+        Stats [] results = { new Stats(), new Stats() };
+        Position position = new Position(game.heaps, game.heaps.length, game.prevMove);
+        int side = 0;
+        while (hasMoves(position)) {
+            long startTime = System.nanoTime();
+            SearchResult result = engines[side].search(position, limits[sides[side]]);
+            results[side].latency.record(System.nanoTime() - startTime);
+            results[side].moves++;
+            results[side].nodes += result.getNodes();
+            position = position.play(result.getColumn(), result.getRow());
+            side = 1 - side;
+        }
+        // the player on the move has no valid move and loses
+        int winner = 1 - side;
+        results[winner].wins++;
+        results[0].games++;
+        results[1].games++;
+
+        synchronized (this) {
+            stats[game.first].add(results[0]);
+            stats[game.second].add(results[1]);
+            pairWins[sides[winner]][sides[1 - winner]]++;
+            played++;
+            if (sprt != null && decision == Sprt.Status.CONTINUE) {
+                decision = sprt.status(pairWins[0][1], pairWins[1][0]);
+                if (decision != Sprt.Status.CONTINUE) {
+                    // games already running are finished and reported, but do not change the decision
+                    decisionGames = played;
+                    stopped = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if the player on the move has a valid move
+     *
+     * @param position position of the game
+     * @return whether there is a valid move
+     */
+    private static boolean hasMoves(Position position) {
+        return position.isSmall() ? MoveGenerator.hasMoves(position.pack()) : LargeState.of(position).countMoves() > 0;
+    }
+
+    /**
+     * Prints the results of every player and every pair
+     *
+     * @param millis duration of the tournament
+     */
+    private void print(long millis) {
+        System.out.printf("%d games in %d ms on %d threads%n", played, millis, threads);
+        Game first = schedule.get(0);
+        if (!new Position(first.heaps, first.heaps.length, first.prevMove).isSmall()) {
+            // only the -start position can be too large, random setups always fit
+            System.out.println("start position too large to be packed, every player but random plays mcts "
+                    + "until it fits");
+        }
+        System.out.println();
+        System.out.printf("%-16s %7s %7s %7s %8s %12s %10s %10s %10s%n", "player", "games", "wins", "win %",
+                "moves", "nodes/move", "p50 ms", "p99 ms", "max ms");
+        for (int i = 0; i < players.size(); i++) {
+            Stats s = stats[i];
+            System.out.printf(Locale.ROOT, "%-16s %7d %7d %7.1f %8d %12.0f %10.3f %10.3f %10.3f%n", players.get(i),
+                    s.games, s.wins, 100.0 * s.wins / Math.max(1, s.games), s.moves,
+                    (double) s.nodes / Math.max(1, s.moves), s.latency.getPercentile(0.5),
+                    s.latency.getPercentile(0.99), s.latency.getMax());
+        }
+        System.out.println();
+        for (int a = 0; a < players.size(); a++) {
+            for (int b = a + 1; b < players.size(); b++) {
+                System.out.printf("%s - %s  %d : %d%n", players.get(a), players.get(b), pairWins[a][b], pairWins[b][a]);
+            }
+        }
+        if (sprt != null) {
+            System.out.println();
+            System.out.println(sprt);
+            System.out.printf(Locale.ROOT, "LLR %.3f, elo %.1f, %s%n", sprt.llr(pairWins[0][1], pairWins[1][0]),
+                    Sprt.elo(pairWins[0][1], pairWins[1][0]), describeDecision());
+        }
+    }
+
+    /**
+     * Describes the outcome of the test
+     *
+     * @return accepted hypothesis and the number of games it took
+     */
+    private String describeDecision() {
+        switch (decision) {
+            case ACCEPT_H1:
+                return "H1 accepted after " + decisionGames + " games, " + players.get(0) + " is stronger";
+            case ACCEPT_H0:
+                return "H0 accepted after " + decisionGames + " games, " + players.get(0) + " is not stronger";
+            default:
+                return "undecided after " + played + " games";
+        }
+    }
+
+    /**
+     * Writes the results of every player as CSV
+     *
+     * @param file path of the report
+     * @throws IOException if the report could not be written
+     */
+    private void writeCsv(String file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            writer.println("engine,depth,games,wins,win_rate,moves,nodes,nodes_per_move,p50_ms,p99_ms,max_ms");
+            for (int i = 0; i < players.size(); i++) {
+                Player player = players.get(i);
+                Stats s = stats[i];
+                writer.printf(Locale.ROOT, "%s,%d,%d,%d,%.4f,%d,%d,%.1f,%.3f,%.3f,%.3f%n", player.name, player.depth,
+                        s.games, s.wins, (double) s.wins / Math.max(1, s.games), s.moves, s.nodes,
+                        (double) s.nodes / Math.max(1, s.moves), s.latency.getPercentile(0.5),
+                        s.latency.getPercentile(0.99), s.latency.getMax());
+            }
+            if (writer.checkError()) {
+                throw new IOException("Could not write " + file);
+            }
+        }
+    }
+
+    /**
+     * Writes the results of every player and every pair as JSON
+     *
+     * @param file path of the report
+     * @param millis duration of the tournament
+     * @throws IOException if the report could not be written
+     */
+    private void writeJson(String file, long millis) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, "{%n  \"games\": %d,%n  \"millis\": %d,%n  \"threads\": %d,%n",
+                played, millis, threads));
+        builder.append(String.format("  \"players\": [%n"));
+        for (int i = 0; i < players.size(); i++) {
+            Player player = players.get(i);
+            Stats s = stats[i];
+            builder.append(String.format(Locale.ROOT, "    {\"engine\": \"%s\", \"depth\": %d, \"games\": %d, "
+                            + "\"wins\": %d, \"winRate\": %.4f, \"moves\": %d, \"nodes\": %d, \"p50Ms\": %.3f, "
+                            + "\"p99Ms\": %.3f, \"maxMs\": %.3f}%s%n", player.name, player.depth, s.games, s.wins,
+                    (double) s.wins / Math.max(1, s.games), s.moves, s.nodes, s.latency.getPercentile(0.5),
+                    s.latency.getPercentile(0.99), s.latency.getMax(), i + 1 < players.size() ? "," : ""));
+        }
+        builder.append(String.format("  ],%n  \"pairs\": [%n"));
+        List<String> pairs = new ArrayList<>();
+        for (int a = 0; a < players.size(); a++) {
+            for (int b = a + 1; b < players.size(); b++) {
+                pairs.add(String.format("    {\"first\": \"%s\", \"second\": \"%s\", \"firstWins\": %d, \"secondWins\": %d}",
+                        players.get(a), players.get(b), pairWins[a][b], pairWins[b][a]));
+            }
+        }
+        builder.append(String.join(String.format(",%n"), pairs));
+        builder.append(String.format("%n  ]"));
+        if (sprt != null) {
+            builder.append(String.format(Locale.ROOT, ",%n  \"sprt\": {\"lowerBound\": %.4f, \"upperBound\": %.4f, "
+                            + "\"llr\": %.4f, \"elo\": %.1f, \"decision\": \"%s\", \"decisionGames\": %d}",
+                    sprt.getLowerBound(), sprt.getUpperBound(), sprt.llr(pairWins[0][1], pairWins[1][0]),
+                    Sprt.elo(pairWins[0][1], pairWins[1][0]), decision, decisionGames));
+        }
+        builder.append(String.format("%n}%n"));
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            writer.print(builder);
+            if (writer.checkError()) {
+                throw new IOException("Could not write " + file);
+            }
+        }
+    }
+}